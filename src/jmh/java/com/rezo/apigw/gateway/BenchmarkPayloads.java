@@ -0,0 +1,113 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rezo.apigw.config.GatewayEventLoopProperties;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.context.properties.ConfigurationPropertiesRebinder;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.http.client.ReactorResourceFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Benchmark inputs built from the recorded request payloads in {@code src/test/resources/payloads}, scaled to a
+ * target size, plus a {@link LoggingGlobalFilter} wired without a Spring context.
+ */
+final class BenchmarkPayloads {
+
+    static final String BOUNDARY = "----apigwBenchmarkBoundary7MA4YWxkTrZu0gW";
+    static final List<String> PAYLOADS = List.of("rireq.person.json", "cireq.json", "prreq.json", "cureq.json", "ecreq.json");
+
+    private BenchmarkPayloads() {
+    }
+
+    static String load(String name) {
+        try (InputStream in = BenchmarkPayloads.class.getClassLoader().getResourceAsStream("payloads/" + name)) {
+            if (in == null) throw new IllegalStateException("Missing payload " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A JSON array of recorded payloads (each wrapped with maskable credentials) of at least {@code size} bytes. */
+    static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 2048).append("{\"items\":[\n");
+        for (int i = 0; sb.length() < size; i++) {
+            if (i > 0) sb.append(",\n");
+            sb.append("{\"user\":\"fcbvT034\",\"pass\":\"Fcbv@2025\",\"otp\":123456,\"data\":")
+                    .append(load(PAYLOADS.get(i % PAYLOADS.size()))).append('}');
+        }
+        return sb.append("\n]}").toString();
+    }
+
+    /** An application/x-www-form-urlencoded body of at least {@code size} bytes. */
+    static String form(int size) {
+        StringBuilder sb = new StringBuilder(size + 2048).append("user=fcbvT034&pass=Fcbv%402025&otp=123456");
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("&data").append(i).append('=')
+                    .append(URLEncoder.encode(load(PAYLOADS.get(i % PAYLOADS.size())), StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    /** A multipart/form-data body (see {@link #BOUNDARY}) of at least {@code size} bytes. */
+    static String multipart(int size) {
+        StringBuilder sb = new StringBuilder(size + 2048);
+        part(sb, "user", "fcbvT034");
+        part(sb, "pass", "Fcbv@2025");
+        part(sb, "otp", "123456");
+        for (int i = 0; sb.length() < size; i++) {
+            part(sb, "data" + i, load(PAYLOADS.get(i % PAYLOADS.size())));
+        }
+        return sb.append("--").append(BOUNDARY).append("--\r\n").toString();
+    }
+
+    private static void part(StringBuilder sb, String name, String value) {
+        sb.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+                .append(value).append("\r\n");
+    }
+
+    /** A filter wired like the application around the given access-log writer, logging on the calling thread. */
+    static LoggingGlobalFilter filter(GatewayLoggingProperties props, AccessLogWriter writer) {
+        return filter(props, writer, new LogOffloadExecutor(props, new SimpleMeterRegistry()));
+    }
+
+    /** A filter wired like the application around the given access-log writer and (started or not) offload executor. */
+    static LoggingGlobalFilter filter(GatewayLoggingProperties props, AccessLogWriter writer, LogOffloadExecutor offload) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        LoggingPolicies policies = new LoggingPolicies(props, beans.getBeanProvider(GatewayProperties.class),
+                beans.getBeanProvider(ConfigurationPropertiesRebinder.class));
+        JwtUsernameResolver jwt = new JwtUsernameResolver(props, new ObjectMapper(), meterRegistry);
+        EventLoopLagMonitor lagMonitor = new EventLoopLagMonitor(beans.getBeanProvider(ReactorResourceFactory.class),
+                new GatewayEventLoopProperties(), meterRegistry);
+        LogSampler sampler = new LogSampler(props, lagMonitor, meterRegistry);
+        return new LoggingGlobalFilter(props, writer, policies, jwt, sampler, offload,
+                new CaptureBufferPool(props, meterRegistry));
+    }
+
+    /** A started async access-log writer appending to a fresh temporary directory. */
+    static AccessLogWriter asyncWriter(GatewayLoggingProperties props) {
+        try {
+            Path logDir = Files.createTempDirectory("apigw-bench");
+            props.getAsync().setEnabled(true);
+            props.getAsync().setOverflowPolicy(GatewayLoggingProperties.OverflowPolicy.DROP);
+            AccessLogWriter writer = new AccessLogWriter(props, new SimpleMeterRegistry(), logDir.toString());
+            writer.start();
+            return writer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request header work of {@link LoggingGlobalFilter}: header masking and username extraction.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderBenchmark {
+
+    private LoggingGlobalFilter filter;
+    private HttpHeaders headers;
+    private MaskingRules maskingRules;
+    private ServerHttpRequest bearerRequest;
+    private ServerHttpRequest basicLoginRequest;
+
+    @Setup
+    public void setUp() {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        filter = BenchmarkPayloads.filter(props, new AccessLogWriter(props, new SimpleMeterRegistry(), "target"));
+        String bearer = "Bearer " + jwt("{\"sub\":\"fcbvB505\",\"username\":\"fcbvB505\",\"exp\":"
+                + (System.currentTimeMillis() / 1000 + 3600) + ",\"roles\":[\"KCI\",\"REPORT\"]}");
+        bearerRequest = MockServerHttpRequest.post("/cireq")
+                .header(HttpHeaders.AUTHORIZATION, bearer)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.USER_AGENT, "PostmanRuntime/7.39.0")
+                .header(HttpHeaders.COOKIE, "SESSION=2f1c9e2f-6c7a-4a8e-9b61-2a5f7f6d0e11")
+                .header("X-Correlation-Id", "b3f1d2c4-8a9e-4f0b-9c1d-2e3f4a5b6c7d")
+                .build();
+        headers = bearerRequest.getHeaders();
+        maskingRules = new MaskingRules(props.getMaskedHeaders(), props.getMaskedJsonFields(), props.getMaskedFormFields());
+        basicLoginRequest = MockServerHttpRequest.post("/login")
+                .header(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                        .encodeToString("fcbvKCI:Fcbv@2025".getBytes(StandardCharsets.UTF_8)))
+                .build();
+    }
+
+    @Benchmark
+    public String maskHeaders() {
+        return filter.maskHeaders(headers, maskingRules);
+    }
+
+    @Benchmark
+    public String extractUsernameBearer() {
+        return filter.extractUsername(bearerRequest);
+    }
+
+    @Benchmark
+    public String extractUsernameBasic() {
+        return filter.extractUsername(basicLoginRequest);
+    }
+
+    private static String jwt(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".c2lnbmF0dXJl";
+    }
+}
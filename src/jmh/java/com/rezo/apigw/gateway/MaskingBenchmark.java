@@ -0,0 +1,79 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.context.properties.ConfigurationPropertiesRebinder;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Body masking and normalisation helpers of {@link LoggingGlobalFilter} over recorded payloads scaled to
+ * 1 KB, 64 KB and 1 MB. Run with {@code -prof gc} to see the allocation rate next to the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaskingBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int size;
+
+    private GatewayLoggingProperties props;
+    private LoggingGlobalFilter filter;
+    private LoggingPolicy policy;
+    private String json;
+    private DataBuffer jsonBuffer;
+    private String form;
+    private DataBuffer multipart;
+    private MediaType multipartType;
+
+    @Setup
+    public void setUp() {
+        props = new GatewayLoggingProperties();
+        filter = BenchmarkPayloads.filter(props, new AccessLogWriter(props, new SimpleMeterRegistry(), "target"));
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        policy = new LoggingPolicies(props, beans.getBeanProvider(GatewayProperties.class),
+                beans.getBeanProvider(ConfigurationPropertiesRebinder.class)).resolve((String) null);
+        json = BenchmarkPayloads.json(size);
+        jsonBuffer = DefaultDataBufferFactory.sharedInstance.wrap(json.getBytes(StandardCharsets.UTF_8));
+        form = BenchmarkPayloads.form(size);
+        multipart = DefaultDataBufferFactory.sharedInstance.wrap(
+                BenchmarkPayloads.multipart(size).getBytes(StandardCharsets.UTF_8));
+        multipartType = MediaType.parseMediaType("multipart/form-data; boundary=" + BenchmarkPayloads.BOUNDARY);
+    }
+
+    @Benchmark
+    public String maskJsonFieldsRegex() {
+        return filter.maskJsonFields(json, policy.getMaskingRules());
+    }
+
+    @Benchmark
+    public String maskJsonFieldsStreaming() {
+        return filter.maybeMaskBody(LoggingPolicy.BodyFormat.JSON, MediaType.APPLICATION_JSON, jsonBuffer, policy);
+    }
+
+    @Benchmark
+    public String maskFormFields() {
+        return filter.maskFormFields(form, policy.getMaskingRules());
+    }
+
+    @Benchmark
+    public String maskMultipartForm() {
+        return filter.maskMultipartForm(multipart, multipartType, policy.getMaskingRules());
+    }
+
+    @Benchmark
+    public String toSingleLine() {
+        return filter.toSingleLine(json);
+    }
+}
@@ -0,0 +1,50 @@
+package com.rezo.apigw.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "gateway.cache")
+public class GatewayCacheProperties {
+    /** Upper bound on the total size of cached responses (bodies plus headers) */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+    /** Responses with larger bodies are passed through without being cached */
+    private DataSize maxEntrySize = DataSize.ofKilobytes(256);
+    /** Requests with a larger (or chunked, unknown-length) body bypass the cache */
+    private DataSize maxRequestBodySize = DataSize.ofKilobytes(16);
+    /** Entry lifetime for routes that do not set their own ttl */
+    private Duration defaultTtl = Duration.ofSeconds(30);
+    /** Cached endpoints keyed by route id; routes not listed here are never cached */
+    private Map<String, RouteCache> routes = new LinkedHashMap<>();
+
+    public DataSize getMaxSize() { return maxSize; }
+    public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+    public DataSize getMaxEntrySize() { return maxEntrySize; }
+    public void setMaxEntrySize(DataSize maxEntrySize) { this.maxEntrySize = maxEntrySize; }
+    public DataSize getMaxRequestBodySize() { return maxRequestBodySize; }
+    public void setMaxRequestBodySize(DataSize maxRequestBodySize) { this.maxRequestBodySize = maxRequestBodySize; }
+    public Duration getDefaultTtl() { return defaultTtl; }
+    public void setDefaultTtl(Duration defaultTtl) { this.defaultTtl = defaultTtl; }
+    public Map<String, RouteCache> getRoutes() { return routes; }
+    public void setRoutes(Map<String, RouteCache> routes) { this.routes = routes; }
+
+    public static class RouteCache {
+        /** Path patterns of the idempotent lookup endpoints to cache (e.g. /cireq); nothing is cached when empty */
+        private List<String> paths = List.of();
+        /** Entry lifetime; defaults to gateway.cache.default-ttl (0 only coalesces concurrent identical requests) */
+        private Duration ttl;
+        /** Let identical concurrent requests share one upstream call instead of each making their own */
+        private boolean coalesce = true;
+
+        public List<String> getPaths() { return paths; }
+        public void setPaths(List<String> paths) { this.paths = paths; }
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+        public boolean isCoalesce() { return coalesce; }
+        public void setCoalesce(boolean coalesce) { this.coalesce = coalesce; }
+    }
+}
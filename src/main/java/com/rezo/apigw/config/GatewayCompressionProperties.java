@@ -0,0 +1,31 @@
+package com.rezo.apigw.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+/**
+ * Negotiated gzip/deflate compression of responses sent to clients (keep {@code server.compression.enabled} off).
+ */
+@ConfigurationProperties(prefix = "gateway.compression")
+public class GatewayCompressionProperties {
+    /** Compress responses for clients that send a matching Accept-Encoding */
+    private boolean enabled = false;
+    /** Responses with a smaller Content-Length are sent as they are (chunked responses are always compressed) */
+    private DataSize minResponseSize = DataSize.ofKilobytes(2);
+    /** gzip/deflate level, 1 (fastest) to 9 (smallest) */
+    private int level = 6;
+    /** Content types that are compressed (type/subtype, subtype may be '*') */
+    private List<String> mimeTypes = List.of("application/json", "application/*+json", "text/*", "application/xml",
+            "application/javascript");
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public DataSize getMinResponseSize() { return minResponseSize; }
+    public void setMinResponseSize(DataSize minResponseSize) { this.minResponseSize = minResponseSize; }
+    public int getLevel() { return level; }
+    public void setLevel(int level) { this.level = level; }
+    public List<String> getMimeTypes() { return mimeTypes; }
+    public void setMimeTypes(List<String> mimeTypes) { this.mimeTypes = mimeTypes; }
+}
@@ -0,0 +1,29 @@
+package com.rezo.apigw.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Event-loop watchdog: probes each server event loop and samples the stack of loops that fall behind.
+ */
+@ConfigurationProperties(prefix = "gateway.event-loop")
+public class GatewayEventLoopProperties {
+    /** How often a no-op probe is submitted to each loop */
+    private Duration probeInterval = Duration.ofMillis(100);
+    /** Lag above which a loop counts as stalled and the stack of its thread is sampled */
+    private Duration stallThreshold = Duration.ofMillis(100);
+    /** Most recent stall samples kept for /actuator/eventloops */
+    private int maxSamples = 20;
+    /** Stack frames kept per sample */
+    private int stackDepth = 32;
+
+    public Duration getProbeInterval() { return probeInterval; }
+    public void setProbeInterval(Duration probeInterval) { this.probeInterval = probeInterval; }
+    public Duration getStallThreshold() { return stallThreshold; }
+    public void setStallThreshold(Duration stallThreshold) { this.stallThreshold = stallThreshold; }
+    public int getMaxSamples() { return maxSamples; }
+    public void setMaxSamples(int maxSamples) { this.maxSamples = maxSamples; }
+    public int getStackDepth() { return stackDepth; }
+    public void setStackDepth(int stackDepth) { this.stackDepth = stackDepth; }
+}
@@ -2,7 +2,12 @@ package com.rezo.apigw.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "gateway.logging")
 public class GatewayLoggingProperties {
@@ -22,10 +27,49 @@ public class GatewayLoggingProperties {
     private List<String> maskedJsonFields = List.of("pass", "old_pass", "new_pass", "otp", "password", "token");
     /** Form field names to mask in application/x-www-form-urlencoded and multipart/form-data bodies */
     private List<String> maskedFormFields = List.of("pass", "old_pass", "new_pass", "otp", "password", "token");
-    /** Only log body if Content-Type matches these substrings */
+    /** Only log body if Content-Type matches one of these media types (type/subtype, subtype may be '*') */
     private List<String> contentTypeIncludes = List.of("application/json", "text/plain", "application/x-www-form-urlencoded", "multipart/form-data");
     /** Preferred JWT claim keys to read username from */
     private List<String> usernameClaimKeys = List.of("username", "sub", "user_name");
+    /** Cache of Bearer token -> username so repeated calls with the same JWT skip decoding */
+    private final JwtCache jwtCache = new JwtCache();
+    /** Masking engine for JSON bodies: STREAMING (single-pass Jackson) or REGEX (legacy per-field replaceAll) */
+    private JsonMaskingMode jsonMaskingMode = JsonMaskingMode.STREAMING;
+    /** Access-log output: TEXT lines, or one structured record per exchange as JSON lines or CBOR */
+    private AccessLogFormat format = AccessLogFormat.TEXT;
+    /** TEXT format: one line per exchange, emitted when it completes, is cancelled or fails (JSON/CBOR always are) */
+    private boolean consolidated = false;
+    /** Per-exchange records kept for reuse between exchanges */
+    private int recordPoolSize = 1024;
+
+    /** Decides once per exchange whether request/response bodies are captured */
+    private final Sampling sampling = new Sampling();
+    /** Per-route overrides keyed by route id; unset values inherit the global settings above */
+    private Map<String, RoutePolicy> routes = new LinkedHashMap<>();
+    /** Asynchronous access-log pipeline (ring buffer drained by a dedicated writer thread) */
+    private final Async async = new Async();
+    /** Per-route latency timers and body-size summaries (independent of whether anything is logged) */
+    private final Metrics metrics = new Metrics();
+    /** Body masking, formatting and log emission on virtual threads instead of the Netty event loop */
+    private final Offload offload = new Offload();
+    /** Pooled (off-heap by default) buffers the request/response bodies are captured into */
+    private final Capture capture = new Capture();
+
+    public enum JsonMaskingMode {
+        /** One pass over the bytes with Jackson; masks string, numeric and nested values */
+        STREAMING,
+        /** Legacy regex per field; masks quoted string values only */
+        REGEX
+    }
+
+    public enum AccessLogFormat {
+        /** Free-text lines built from SLF4J templates (request, request body and response lines) */
+        TEXT,
+        /** One JSON object per exchange, newline-delimited */
+        JSON,
+        /** One CBOR map per exchange, each prefixed with its length as a 4-byte big-endian int (async writer only) */
+        CBOR
+    }
 
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
@@ -47,4 +91,209 @@ public class GatewayLoggingProperties {
     public void setContentTypeIncludes(List<String> contentTypeIncludes) { this.contentTypeIncludes = contentTypeIncludes; }
     public List<String> getUsernameClaimKeys() { return usernameClaimKeys; }
     public void setUsernameClaimKeys(List<String> usernameClaimKeys) { this.usernameClaimKeys = usernameClaimKeys; }
+    public JsonMaskingMode getJsonMaskingMode() { return jsonMaskingMode; }
+    public void setJsonMaskingMode(JsonMaskingMode jsonMaskingMode) { this.jsonMaskingMode = jsonMaskingMode; }
+    public AccessLogFormat getFormat() { return format; }
+    public void setFormat(AccessLogFormat format) { this.format = format; }
+    public boolean isConsolidated() { return consolidated; }
+    public void setConsolidated(boolean consolidated) { this.consolidated = consolidated; }
+    public int getRecordPoolSize() { return recordPoolSize; }
+    public void setRecordPoolSize(int recordPoolSize) { this.recordPoolSize = recordPoolSize; }
+    public JwtCache getJwtCache() { return jwtCache; }
+    public Sampling getSampling() { return sampling; }
+    public Map<String, RoutePolicy> getRoutes() { return routes; }
+    public void setRoutes(Map<String, RoutePolicy> routes) { this.routes = routes; }
+    public Async getAsync() { return async; }
+    public Metrics getMetrics() { return metrics; }
+    public Offload getOffload() { return offload; }
+    public Capture getCapture() { return capture; }
+
+    public static class JwtCache {
+        /** Maximum number of cached tokens */
+        private long maxSize = 10_000;
+        /** Lifetime of entries for tokens without an exp claim */
+        private Duration defaultTtl = Duration.ofMinutes(5);
+        /** Upper bound on entry lifetime, even when exp is further away */
+        private Duration maxTtl = Duration.ofHours(1);
+
+        public long getMaxSize() { return maxSize; }
+        public void setMaxSize(long maxSize) { this.maxSize = maxSize; }
+        public Duration getDefaultTtl() { return defaultTtl; }
+        public void setDefaultTtl(Duration defaultTtl) { this.defaultTtl = defaultTtl; }
+        public Duration getMaxTtl() { return maxTtl; }
+        public void setMaxTtl(Duration maxTtl) { this.maxTtl = maxTtl; }
+    }
+
+    public static class Sampling {
+        private SamplingMode mode = SamplingMode.FIXED;
+        /** Fraction (0..1) of exchanges whose bodies are captured; routes may override it */
+        private double rate = 1.0;
+        /** ERRORS_AND_SLOW: responses slower than this are always captured */
+        private Duration slowThreshold = Duration.ofSeconds(2);
+        /** ADAPTIVE: in-flight exchanges above which the rate is scaled down */
+        private int maxInFlight = 256;
+        /** ADAPTIVE: event-loop scheduling lag above which the rate is scaled down */
+        private Duration maxEventLoopLag = Duration.ofMillis(20);
+        /** ADAPTIVE: floor for the scaled-down rate */
+        private double minRate = 0.01;
+
+        public SamplingMode getMode() { return mode; }
+        public void setMode(SamplingMode mode) { this.mode = mode; }
+        public double getRate() { return rate; }
+        public void setRate(double rate) { this.rate = rate; }
+        public Duration getSlowThreshold() { return slowThreshold; }
+        public void setSlowThreshold(Duration slowThreshold) { this.slowThreshold = slowThreshold; }
+        public int getMaxInFlight() { return maxInFlight; }
+        public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+        public Duration getMaxEventLoopLag() { return maxEventLoopLag; }
+        public void setMaxEventLoopLag(Duration maxEventLoopLag) { this.maxEventLoopLag = maxEventLoopLag; }
+        public double getMinRate() { return minRate; }
+        public void setMinRate(double minRate) { this.minRate = minRate; }
+    }
+
+    public enum SamplingMode {
+        /** Capture bodies for a fixed fraction of exchanges (rate=1.0 captures everything) */
+        FIXED,
+        /** FIXED, plus the response body of every non-2xx or slow exchange */
+        ERRORS_AND_SLOW,
+        /** FIXED rate scaled down while in-flight exchanges or event-loop lag exceed their thresholds */
+        ADAPTIVE
+    }
+
+    public static class RoutePolicy {
+        /** Log anything at all for this route */
+        private Boolean enabled;
+        private Boolean logHeaders;
+        private Boolean logRequestBody;
+        private Boolean logResponseBody;
+        /** Fraction (0..1) of exchanges whose bodies are captured */
+        private Double samplingRate;
+        private Integer maxBodySize;
+        private List<String> maskedJsonFields;
+        private List<String> maskedFormFields;
+        private List<String> contentTypeIncludes;
+
+        public Boolean getEnabled() { return enabled; }
+        public void setEnabled(Boolean enabled) { this.enabled = enabled; }
+        public Boolean getLogHeaders() { return logHeaders; }
+        public void setLogHeaders(Boolean logHeaders) { this.logHeaders = logHeaders; }
+        public Boolean getLogRequestBody() { return logRequestBody; }
+        public void setLogRequestBody(Boolean logRequestBody) { this.logRequestBody = logRequestBody; }
+        public Boolean getLogResponseBody() { return logResponseBody; }
+        public void setLogResponseBody(Boolean logResponseBody) { this.logResponseBody = logResponseBody; }
+        public Double getSamplingRate() { return samplingRate; }
+        public void setSamplingRate(Double samplingRate) { this.samplingRate = samplingRate; }
+        public Integer getMaxBodySize() { return maxBodySize; }
+        public void setMaxBodySize(Integer maxBodySize) { this.maxBodySize = maxBodySize; }
+        public List<String> getMaskedJsonFields() { return maskedJsonFields; }
+        public void setMaskedJsonFields(List<String> maskedJsonFields) { this.maskedJsonFields = maskedJsonFields; }
+        public List<String> getMaskedFormFields() { return maskedFormFields; }
+        public void setMaskedFormFields(List<String> maskedFormFields) { this.maskedFormFields = maskedFormFields; }
+        public List<String> getContentTypeIncludes() { return contentTypeIncludes; }
+        public void setContentTypeIncludes(List<String> contentTypeIncludes) { this.contentTypeIncludes = contentTypeIncludes; }
+    }
+
+    public static class Async {
+        /** Write access-log records from a dedicated thread instead of the Netty event loop */
+        private boolean enabled = false;
+        /** File name, resolved against logging.file.path */
+        private String fileName = "access.log";
+        /** Ring buffer capacity in records (rounded up to a power of two) */
+        private int bufferSize = 8192;
+        /** Maximum records drained and written per batch */
+        private int batchSize = 512;
+        /** What to do when the buffer fills up */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+        /** SAMPLE policy: fraction of records kept once the buffer is above sampleThreshold */
+        private double sampleRate = 0.1;
+        /** SAMPLE policy: buffer fill ratio (0..1) above which sampling starts */
+        private double sampleThreshold = 0.75;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+        public int getBufferSize() { return bufferSize; }
+        public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+        public double getSampleRate() { return sampleRate; }
+        public void setSampleRate(double sampleRate) { this.sampleRate = sampleRate; }
+        public double getSampleThreshold() { return sampleThreshold; }
+        public void setSampleThreshold(double sampleThreshold) { this.sampleThreshold = sampleThreshold; }
+    }
+
+    public static class Metrics {
+        /** Record gateway.exchange.* / gateway.upstream.* meters tagged by route, method and status class */
+        private boolean enabled = true;
+        /** SLO buckets published for the latency timers */
+        private List<Duration> latencySlos = List.of(Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
+                Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1),
+                Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(10));
+        /** SLO buckets published for the body-size summaries */
+        private List<DataSize> sizeSlos = List.of(DataSize.ofKilobytes(1), DataSize.ofKilobytes(10),
+                DataSize.ofKilobytes(100), DataSize.ofMegabytes(1), DataSize.ofMegabytes(10));
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public List<Duration> getLatencySlos() { return latencySlos; }
+        public void setLatencySlos(List<Duration> latencySlos) { this.latencySlos = latencySlos; }
+        public List<DataSize> getSizeSlos() { return sizeSlos; }
+        public void setSizeSlos(List<DataSize> sizeSlos) { this.sizeSlos = sizeSlos; }
+    }
+
+    public static class Offload {
+        /** Mask, format and emit access-log lines on virtual threads; off, the event loop does it inline */
+        private boolean enabled = false;
+        /** Virtual threads doing logging work at once (masking is CPU-bound and shares the cores with the event loops) */
+        private int maxConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        /** Exchanges whose logging work (and captured bodies) may wait for a thread; beyond that the loop does it */
+        private int queueSize = 256;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxConcurrency() { return maxConcurrency; }
+        public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+        public int getQueueSize() { return queueSize; }
+        public void setQueueSize(int queueSize) { this.queueSize = queueSize; }
+    }
+
+    public static class Capture {
+        /** Capture into direct (off-heap) memory; false pools heap buffers instead */
+        private boolean direct = true;
+        /** Pool arenas; more arenas mean less contention between event loops and more memory held */
+        private int arenas = Runtime.getRuntime().availableProcessors();
+        /** Capacities a capture starts at and grows through; bodies beyond the largest get their exact size */
+        private List<DataSize> sizeClasses = List.of(DataSize.ofKilobytes(4), DataSize.ofKilobytes(16),
+                DataSize.ofKilobytes(64), DataSize.ofKilobytes(256), DataSize.ofMegabytes(1));
+        /** PARANOID records where every capture was allocated and reports the unreleased ones (tests only) */
+        private LeakDetection leakDetection = LeakDetection.DISABLED;
+
+        public boolean isDirect() { return direct; }
+        public void setDirect(boolean direct) { this.direct = direct; }
+        public int getArenas() { return arenas; }
+        public void setArenas(int arenas) { this.arenas = arenas; }
+        public List<DataSize> getSizeClasses() { return sizeClasses; }
+        public void setSizeClasses(List<DataSize> sizeClasses) { this.sizeClasses = sizeClasses; }
+        public LeakDetection getLeakDetection() { return leakDetection; }
+        public void setLeakDetection(LeakDetection leakDetection) { this.leakDetection = leakDetection; }
+    }
+
+    public enum LeakDetection {
+        /** Count unreleased captures only */
+        DISABLED,
+        /** Also keep the allocation site of every capture until it is released */
+        PARANOID
+    }
+
+    public enum OverflowPolicy {
+        /** Discard the record when the buffer is full */
+        DROP,
+        /** Keep only sampleRate of the records once the buffer passes sampleThreshold; discard when full */
+        SAMPLE,
+        /** Make the producer wait for free space (back-pressures the event loop) */
+        BLOCK
+    }
 }
@@ -0,0 +1,71 @@
+package com.rezo.apigw.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process request rate limits: one token bucket per route and caller, held in gateway memory only.
+ */
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+public class GatewayRateLimitProperties {
+    /** Apply the limits below; routes can still opt out one by one */
+    private boolean enabled = false;
+    /** What identifies a caller */
+    private KeyResolver keyResolver = KeyResolver.IP;
+    /** Addresses of authenticating proxies whose username headers USER_OR_IP trusts; nobody else's are used */
+    private List<String> trustedProxies = List.of();
+    /** Requests per second each caller may sustain */
+    private int replenishRate = 20;
+    /** Requests a caller may send in one burst after being idle */
+    private int burstCapacity = 40;
+    /** Upper bound on the number of buckets kept; the least recently used ones are dropped beyond it */
+    private long maxKeys = 100_000;
+    /** Buckets untouched for this long are dropped (a dropped bucket comes back full, so keep it above burst/rate) */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    /** Per-route overrides keyed by route id */
+    private Map<String, RouteLimit> routes = new LinkedHashMap<>();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public KeyResolver getKeyResolver() { return keyResolver; }
+    public void setKeyResolver(KeyResolver keyResolver) { this.keyResolver = keyResolver; }
+    public List<String> getTrustedProxies() { return trustedProxies; }
+    public void setTrustedProxies(List<String> trustedProxies) { this.trustedProxies = trustedProxies; }
+    public int getReplenishRate() { return replenishRate; }
+    public void setReplenishRate(int replenishRate) { this.replenishRate = replenishRate; }
+    public int getBurstCapacity() { return burstCapacity; }
+    public void setBurstCapacity(int burstCapacity) { this.burstCapacity = burstCapacity; }
+    public long getMaxKeys() { return maxKeys; }
+    public void setMaxKeys(long maxKeys) { this.maxKeys = maxKeys; }
+    public Duration getIdleTimeout() { return idleTimeout; }
+    public void setIdleTimeout(Duration idleTimeout) { this.idleTimeout = idleTimeout; }
+    public Map<String, RouteLimit> getRoutes() { return routes; }
+    public void setRoutes(Map<String, RouteLimit> routes) { this.routes = routes; }
+
+    public enum KeyResolver {
+        /** Always the client IP */
+        IP,
+        /** The username on requests from a trusted proxy, else the client IP (client-sent names are never trusted) */
+        USER_OR_IP
+    }
+
+    public static class RouteLimit {
+        /** Set to false to exempt the route */
+        private boolean enabled = true;
+        /** Defaults to gateway.rate-limit.replenish-rate */
+        private Integer replenishRate;
+        /** Defaults to gateway.rate-limit.burst-capacity */
+        private Integer burstCapacity;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public Integer getReplenishRate() { return replenishRate; }
+        public void setReplenishRate(Integer replenishRate) { this.replenishRate = replenishRate; }
+        public Integer getBurstCapacity() { return burstCapacity; }
+        public void setBurstCapacity(Integer burstCapacity) { this.burstCapacity = burstCapacity; }
+    }
+}
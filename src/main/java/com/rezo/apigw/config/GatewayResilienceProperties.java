@@ -0,0 +1,46 @@
+package com.rezo.apigw.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which Resilience4j instances guard which upstream endpoints. The instances themselves (circuit breaker, bulkhead
+ * and time limiter settings) are configured with the standard {@code resilience4j.circuitbreaker.*},
+ * {@code resilience4j.bulkhead.*} and {@code resilience4j.timelimiter.*} properties.
+ */
+@ConfigurationProperties(prefix = "gateway.resilience")
+public class GatewayResilienceProperties {
+    /** Guard upstream calls with a circuit breaker, bulkhead and time limiter */
+    private boolean enabled = true;
+    /** Per-route endpoint groups keyed by route id; unlisted routes (and paths) use an instance named after the route */
+    private Map<String, RouteResilience> routes = new LinkedHashMap<>();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public Map<String, RouteResilience> getRoutes() { return routes; }
+    public void setRoutes(Map<String, RouteResilience> routes) { this.routes = routes; }
+
+    public static class RouteResilience {
+        /** Endpoint groups with their own instance, first match wins */
+        private List<Endpoint> endpoints = new ArrayList<>();
+
+        public List<Endpoint> getEndpoints() { return endpoints; }
+        public void setEndpoints(List<Endpoint> endpoints) { this.endpoints = endpoints; }
+    }
+
+    public static class Endpoint {
+        /** Path patterns of the endpoints in this group */
+        private List<String> paths = List.of();
+        /** Resilience4j instance name shared by the circuit breaker, bulkhead and time limiter */
+        private String instance;
+
+        public List<String> getPaths() { return paths; }
+        public void setPaths(List<String> paths) { this.paths = paths; }
+        public String getInstance() { return instance; }
+        public void setInstance(String instance) { this.instance = instance; }
+    }
+}
@@ -0,0 +1,81 @@
+package com.rezo.apigw.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dedicated upstream connection pools per route. Routes without an entry share the gateway's default pool
+ * ({@code spring.cloud.gateway.server.webflux.httpclient.pool.*}).
+ */
+@ConfigurationProperties(prefix = "gateway.upstream")
+public class GatewayUpstreamProperties {
+    /** Connection pools keyed by route id */
+    private Map<String, Pool> pools = new LinkedHashMap<>();
+    private Warmup warmup = new Warmup();
+
+    public Map<String, Pool> getPools() { return pools; }
+    public void setPools(Map<String, Pool> pools) { this.pools = pools; }
+    public Warmup getWarmup() { return warmup; }
+    public void setWarmup(Warmup warmup) { this.warmup = warmup; }
+
+    public enum LeasingStrategy {
+        /** Reuse the most recently released connection first, so a few stay hot and the rest idle out */
+        LIFO,
+        /** Rotate through all pooled connections */
+        FIFO
+    }
+
+    public static class Pool {
+        /** Connections opened to the upstream at most */
+        private int maxConnections = 100;
+        /** Requests allowed to wait for a connection once all are in use (-1: unbounded) */
+        private int pendingAcquireMaxCount = 200;
+        /** How long a request waits for a connection before failing */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        /** Close connections idle for longer than this (keep below the upstream's keep-alive timeout) */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        /** Close connections older than this, so DNS or load-balancer changes are picked up */
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        /** How often idle and expired connections are evicted in the background (0: only when acquired) */
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        private LeasingStrategy leasingStrategy = LeasingStrategy.LIFO;
+        /** Connections (and TLS sessions) opened at startup, before readiness reports UP */
+        private int warmupConnections = 0;
+
+        public int getMaxConnections() { return maxConnections; }
+        public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+        public int getPendingAcquireMaxCount() { return pendingAcquireMaxCount; }
+        public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) { this.pendingAcquireMaxCount = pendingAcquireMaxCount; }
+        public Duration getPendingAcquireTimeout() { return pendingAcquireTimeout; }
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) { this.pendingAcquireTimeout = pendingAcquireTimeout; }
+        public Duration getMaxIdleTime() { return maxIdleTime; }
+        public void setMaxIdleTime(Duration maxIdleTime) { this.maxIdleTime = maxIdleTime; }
+        public Duration getMaxLifeTime() { return maxLifeTime; }
+        public void setMaxLifeTime(Duration maxLifeTime) { this.maxLifeTime = maxLifeTime; }
+        public Duration getEvictionInterval() { return evictionInterval; }
+        public void setEvictionInterval(Duration evictionInterval) { this.evictionInterval = evictionInterval; }
+        public LeasingStrategy getLeasingStrategy() { return leasingStrategy; }
+        public void setLeasingStrategy(LeasingStrategy leasingStrategy) { this.leasingStrategy = leasingStrategy; }
+        public int getWarmupConnections() { return warmupConnections; }
+        public void setWarmupConnections(int warmupConnections) { this.warmupConnections = warmupConnections; }
+    }
+
+    public static class Warmup {
+        /** Open each pool's warmup-connections at startup */
+        private boolean enabled = true;
+        /** Path requested (with HEAD) to establish each connection; any response will do */
+        private String path = "/";
+        /** Readiness stops waiting for the warm-up after this long */
+        private Duration timeout = Duration.ofSeconds(10);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    }
+}
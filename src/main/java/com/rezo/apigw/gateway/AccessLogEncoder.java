@@ -0,0 +1,364 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.rezo.apigw.config.GatewayLoggingProperties.AccessLogFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Encodes access-log entries for the {@link AccessLogWriter} thread in the configured {@link AccessLogFormat}.
+ * <p>
+ * Structured formats keep one Jackson generator for the lifetime of the writer and write every field name from a
+ * pre-serialized {@link SerializedString}, so encoding a record allocates next to nothing. Plain template entries
+ * ({@link AccessLogWriter#log(String, Object...)}) become {@code {"ts":..,"msg":".."}} records in those formats.
+ * In TEXT format a record is rendered as a single line joining the request and response parts of the classic lines.
+ * Instances are confined to the writer thread.
+ */
+abstract class AccessLogEncoder implements Closeable {
+
+    private static final JsonFactory JSON = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamWriteFeature.FLUSH_PASSED_TO_STREAM)
+            .build();
+    private static final CBORFactory CBOR = CBORFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamWriteFeature.FLUSH_PASSED_TO_STREAM)
+            .build();
+
+    private static final SerializableString TS = new SerializedString("ts");
+    private static final SerializableString MSG = new SerializedString("msg");
+    private static final SerializableString CORRELATION_ID = new SerializedString("correlationId");
+    private static final SerializableString USER = new SerializedString("user");
+    private static final SerializableString ROUTE_ID = new SerializedString("routeId");
+    private static final SerializableString METHOD = new SerializedString("method");
+    private static final SerializableString PATH = new SerializedString("path");
+    private static final SerializableString QUERY = new SerializedString("query");
+    private static final SerializableString STATUS = new SerializedString("status");
+    private static final SerializableString LATENCY_MS = new SerializedString("latencyMs");
+    private static final SerializableString REQUEST_HEADERS = new SerializedString("requestHeaders");
+    private static final SerializableString REQUEST_BYTES = new SerializedString("requestBytes");
+    private static final SerializableString REQUEST_BODY = new SerializedString("requestBody");
+    private static final SerializableString RESPONSE_HEADERS = new SerializedString("responseHeaders");
+    private static final SerializableString RESPONSE_BYTES = new SerializedString("responseBytes");
+    private static final SerializableString RESPONSE_BODY = new SerializedString("responseBody");
+    private static final SerializableString OUTCOME = new SerializedString("outcome");
+    private static final SerializableString CACHE = new SerializedString("cache");
+    private static final SerializableString ERROR = new SerializedString("error");
+    private static final SerializableString REQUEST_BODY_US = new SerializedString("requestBodyUs");
+    private static final SerializableString UPSTREAM_CONNECT_US = new SerializedString("upstreamConnectUs");
+    private static final SerializableString UPSTREAM_WAIT_US = new SerializedString("upstreamWaitUs");
+    private static final SerializableString RESPONSE_WRITE_US = new SerializedString("responseWriteUs");
+
+    static AccessLogEncoder create(AccessLogFormat format, OutputStream out) throws IOException {
+        return switch (format) {
+            case TEXT -> new Text(out);
+            case JSON -> new JsonLines(out);
+            case CBOR -> new LengthPrefixedCbor(out);
+        };
+    }
+
+    /** A template entry, already formatted. */
+    abstract void writeLine(long timestamp, String message) throws IOException;
+
+    abstract void write(AccessLogRecord record) throws IOException;
+
+    /** Push buffered output to the underlying stream. */
+    abstract void flush() throws IOException;
+
+    /** {@code record} as one log line for the synchronous (SLF4J) path: text in TEXT format, JSON otherwise. */
+    static String toLine(AccessLogRecord record, AccessLogFormat format) {
+        if (format == AccessLogFormat.TEXT) {
+            return appendText(new StringBuilder(256), record).toString();
+        }
+        StringWriter out = new StringWriter(256);
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            writeRecord(gen, record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeMessage(JsonGenerator gen, long timestamp, String message) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(TS);
+        gen.writeNumber(timestamp);
+        gen.writeFieldName(MSG);
+        gen.writeString(message);
+        gen.writeEndObject();
+    }
+
+    private static void writeRecord(JsonGenerator gen, AccessLogRecord record) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(TS);
+        gen.writeNumber(record.timestamp);
+        writeString(gen, CORRELATION_ID, record.correlationId);
+        writeString(gen, USER, record.user);
+        writeString(gen, ROUTE_ID, record.routeId);
+        writeString(gen, METHOD, record.method);
+        writeString(gen, PATH, record.path);
+        writeString(gen, QUERY, record.query);
+        gen.writeFieldName(STATUS);
+        if (record.status == AccessLogRecord.NO_STATUS) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(record.status);
+        }
+        gen.writeFieldName(LATENCY_MS);
+        gen.writeNumber(record.latencyMillis);
+        writeMicros(gen, REQUEST_BODY_US, record.requestBodyNanos);
+        writeMicros(gen, UPSTREAM_CONNECT_US, record.upstreamConnectNanos);
+        writeMicros(gen, UPSTREAM_WAIT_US, record.upstreamWaitNanos);
+        writeMicros(gen, RESPONSE_WRITE_US, record.responseWriteNanos);
+        writeHeaders(gen, REQUEST_HEADERS, record.requestHeaders);
+        writeBytes(gen, REQUEST_BYTES, record.requestBytes);
+        writeString(gen, REQUEST_BODY, record.requestBody);
+        writeHeaders(gen, RESPONSE_HEADERS, record.responseHeaders);
+        writeBytes(gen, RESPONSE_BYTES, record.responseBytes);
+        writeString(gen, RESPONSE_BODY, record.responseBody);
+        writeString(gen, OUTCOME, record.outcome);
+        writeString(gen, CACHE, record.cache);
+        writeString(gen, ERROR, record.error);
+        gen.writeEndObject();
+    }
+
+    /**
+     * {@code [cid][user=u] -> METHOD path?query Headers: {..} BODY: .. <- status n ms Headers: {..} BODY: ..}, with
+     * {@code [cancel]} or {@code [error: ..]} appended when the exchange did not complete normally, and the phase
+     * timings that apply as {@code [us: requestBody=.. upstreamConnect=.. upstreamWait=.. responseWrite=..]}, then
+     * {@code [cache: HIT]} (or MISS/BYPASS) on cached endpoints.
+     */
+    static StringBuilder appendText(StringBuilder out, AccessLogRecord record) {
+        out.append('[').append(record.correlationId).append("][user=")
+                .append(record.user != null ? SingleLine.of(record.user) : "-")
+                .append("] -> ").append(record.method).append(' ').append(record.path);
+        if (record.query != null) {
+            out.append('?').append(record.query);
+        }
+        appendHeaders(out, record.requestHeaders);
+        if (record.requestBody != null) {
+            out.append(" BODY: ").append(SingleLine.of(record.requestBody));
+        }
+        out.append(" <- ");
+        if (record.status == AccessLogRecord.NO_STATUS) {
+            out.append('-');
+        } else {
+            out.append(record.status);
+        }
+        out.append(' ').append(record.latencyMillis).append(" ms");
+        appendHeaders(out, record.responseHeaders);
+        if (record.responseBody != null) {
+            out.append(" BODY: ").append(SingleLine.of(record.responseBody));
+        }
+        appendPhases(out, record);
+        if (record.cache != null) {
+            out.append(" [cache: ").append(record.cache).append(']');
+        }
+        if ("cancel".equals(record.outcome)) {
+            out.append(" [cancel]");
+        } else if (record.error != null) {
+            out.append(" [error: ").append(SingleLine.of(record.error)).append(']');
+        }
+        return out;
+    }
+
+    private static void appendPhases(StringBuilder out, AccessLogRecord record) {
+        int length = out.length();
+        out.append(" [us:");
+        appendPhase(out, "requestBody", record.requestBodyNanos);
+        appendPhase(out, "upstreamConnect", record.upstreamConnectNanos);
+        appendPhase(out, "upstreamWait", record.upstreamWaitNanos);
+        appendPhase(out, "responseWrite", record.responseWriteNanos);
+        if (out.length() == length + 5) {
+            out.setLength(length);
+        } else {
+            out.append(']');
+        }
+    }
+
+    private static void appendPhase(StringBuilder out, String name, long nanos) {
+        if (nanos >= 0) {
+            out.append(' ').append(name).append('=').append(nanos / 1000);
+        }
+    }
+
+    /** Same {@code {name=[v1, v2], ...}} shape as the classic lines. */
+    private static void appendHeaders(StringBuilder out, String[] pairs) {
+        if (pairs == null) {
+            return;
+        }
+        out.append(" Headers: {");
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(pairs[i]).append("=[").append(SingleLine.of(pairs[i + 1])).append(']');
+        }
+        out.append('}');
+    }
+
+    private static void writeString(JsonGenerator gen, SerializableString name, String value) throws IOException {
+        if (value != null) {
+            gen.writeFieldName(name);
+            gen.writeString(value);
+        }
+    }
+
+    private static void writeBytes(JsonGenerator gen, SerializableString name, long bytes) throws IOException {
+        if (bytes >= 0) {
+            gen.writeFieldName(name);
+            gen.writeNumber(bytes);
+        }
+    }
+
+    private static void writeMicros(JsonGenerator gen, SerializableString name, long nanos) throws IOException {
+        if (nanos >= 0) {
+            gen.writeFieldName(name);
+            gen.writeNumber(nanos / 1000);
+        }
+    }
+
+    private static void writeHeaders(JsonGenerator gen, SerializableString name, String[] pairs) throws IOException {
+        if (pairs == null) {
+            return;
+        }
+        gen.writeFieldName(name);
+        gen.writeStartObject();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            gen.writeStringField(pairs[i], pairs[i + 1]);
+        }
+        gen.writeEndObject();
+    }
+
+    /** {@code <ISO timestamp> <message>} lines. */
+    private static final class Text extends AccessLogEncoder {
+        private final Writer out;
+        private final StringBuilder line = new StringBuilder(256);
+
+        Text(OutputStream out) {
+            this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void writeLine(long timestamp, String message) throws IOException {
+            out.append(Instant.ofEpochMilli(timestamp).toString()).append(' ').append(message).append('\n');
+        }
+
+        @Override
+        void write(AccessLogRecord record) throws IOException {
+            line.setLength(0);
+            line.append(Instant.ofEpochMilli(record.timestamp)).append(' ');
+            out.append(appendText(line, record).append('\n'));
+            if (line.capacity() > SingleLine.MAX_RETAINED_CAPACITY) {
+                line.setLength(0);
+                line.trimToSize();
+            }
+        }
+
+        @Override
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Newline-delimited JSON written straight to the byte stream. */
+    private static final class JsonLines extends AccessLogEncoder {
+        private final OutputStream out;
+        private final JsonGenerator gen;
+
+        JsonLines(OutputStream out) throws IOException {
+            this.out = out;
+            this.gen = JSON.createGenerator(out);
+            this.gen.setRootValueSeparator(null);
+        }
+
+        @Override
+        void writeLine(long timestamp, String message) throws IOException {
+            writeMessage(gen, timestamp, message);
+            gen.writeRaw('\n');
+        }
+
+        @Override
+        void write(AccessLogRecord record) throws IOException {
+            writeRecord(gen, record);
+            gen.writeRaw('\n');
+        }
+
+        @Override
+        void flush() throws IOException {
+            gen.flush();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            gen.close();
+            out.close();
+        }
+    }
+
+    /** CBOR maps, each framed by its length as a 4-byte big-endian int so readers can skip records unparsed. */
+    private static final class LengthPrefixedCbor extends AccessLogEncoder {
+        private final OutputStream out;
+        private final ByteArrayOutputStream frame = new ByteArrayOutputStream(1024);
+        private final JsonGenerator gen;
+
+        LengthPrefixedCbor(OutputStream out) throws IOException {
+            this.out = out;
+            this.gen = CBOR.createGenerator(frame);
+        }
+
+        @Override
+        void writeLine(long timestamp, String message) throws IOException {
+            writeMessage(gen, timestamp, message);
+            writeFrame();
+        }
+
+        @Override
+        void write(AccessLogRecord record) throws IOException {
+            writeRecord(gen, record);
+            writeFrame();
+        }
+
+        private void writeFrame() throws IOException {
+            gen.flush();
+            int length = frame.size();
+            out.write(length >>> 24);
+            out.write(length >>> 16);
+            out.write(length >>> 8);
+            out.write(length);
+            frame.writeTo(out);
+            frame.reset();
+        }
+
+        @Override
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            gen.close();
+            out.close();
+        }
+    }
+}
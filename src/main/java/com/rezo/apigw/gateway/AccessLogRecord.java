@@ -0,0 +1,167 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One access-log record per exchange, filled in by {@link LoggingGlobalFilter} as the exchange progresses and handed
+ * to {@link AccessLogWriter} exactly once, when the exchange completes, is cancelled or fails.
+ * <p>
+ * Only plain values are stored (headers are snapshotted and masked up front), so the record can be encoded later on
+ * the writer thread without touching the exchange. Records are recycled through a {@link Pool}: body captures that
+ * finish on another signal path attach their result with the {@link #generation()} they started with, and are
+ * ignored once the record has been {@link #seal() sealed} or reused for another exchange.
+ */
+final class AccessLogRecord {
+
+    static final int NO_STATUS = -1;
+
+    /** Epoch millis at filter entry. */
+    long timestamp;
+    String correlationId;
+    String user;
+    String routeId;
+    String method;
+    String path;
+    String query;
+    /** Masked request headers as name/value pairs; multiple values are joined with {@code ", "}. */
+    String[] requestHeaders;
+    String requestBody;
+    /** Request body size as observed by the capture (or Content-Length), -1 when unknown. */
+    long requestBytes = -1;
+
+    /** Status sent to the client, or {@link #NO_STATUS} when the exchange ended before any was sent. */
+    int status;
+    long latencyMillis;
+    String[] responseHeaders;
+    String responseBody;
+    long responseBytes = -1;
+    /** How the exchange ended: {@code complete}, {@code cancel} or {@code error}. */
+    String outcome;
+    String error;
+    /** {@link ExchangeTimings} phases in nanos, -1 when the phase did not happen. */
+    long requestBodyNanos = -1;
+    long upstreamConnectNanos = -1;
+    long upstreamWaitNanos = -1;
+    long responseWriteNanos = -1;
+    /** {@link ResponseCache.Result} name on cached endpoints, {@code null} elsewhere. */
+    String cache;
+
+    private int generation;
+    private boolean sealed;
+
+    synchronized int generation() {
+        return generation;
+    }
+
+    /** Attach the captured request body unless the record was sealed or recycled since {@code generation}. */
+    synchronized boolean attachRequestBody(int generation, String body, long bytes) {
+        if (sealed || this.generation != generation) {
+            return false;
+        }
+        requestBody = body;
+        requestBytes = bytes;
+        return true;
+    }
+
+    /** Attach the captured response body unless the record was sealed or recycled since {@code generation}. */
+    synchronized boolean attachResponseBody(int generation, String body, long bytes) {
+        if (sealed || this.generation != generation) {
+            return false;
+        }
+        responseBody = body;
+        responseBytes = bytes;
+        return true;
+    }
+
+    /** Stop accepting late attachments; called right before the record is handed to the writer. */
+    synchronized void seal() {
+        sealed = true;
+    }
+
+    private synchronized void reset() {
+        generation++;
+        sealed = false;
+        timestamp = 0;
+        correlationId = null;
+        user = null;
+        routeId = null;
+        method = null;
+        path = null;
+        query = null;
+        requestHeaders = null;
+        requestBody = null;
+        requestBytes = -1;
+        status = 0;
+        latencyMillis = 0;
+        responseHeaders = null;
+        responseBody = null;
+        responseBytes = -1;
+        outcome = null;
+        error = null;
+        requestBodyNanos = -1;
+        upstreamConnectNanos = -1;
+        upstreamWaitNanos = -1;
+        responseWriteNanos = -1;
+        cache = null;
+    }
+
+    /** Flatten {@code headers} into name/value pairs, with masked headers replaced by {@link MaskingRules#MASK}. */
+    static String[] snapshot(HttpHeaders headers, MaskingRules rules) {
+        String[] pairs = new String[headers.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            String name = header.getKey();
+            pairs[i++] = name;
+            pairs[i++] = rules.isMaskedHeader(name) ? MaskingRules.MASK : String.join(", ", header.getValue());
+        }
+        return i == pairs.length ? pairs : Arrays.copyOf(pairs, i);
+    }
+
+    /**
+     * Bounded, lock-free pool of records shared by the event loops (which acquire) and the writer (which releases).
+     * Both sides probe a few slots from a random start and fall back to allocating or to dropping the record, so
+     * neither ever waits on the other.
+     */
+    static final class Pool {
+
+        private static final int MAX_PROBES = 8;
+
+        private final AtomicReferenceArray<AccessLogRecord> slots;
+
+        Pool(int capacity) {
+            this.slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+        }
+
+        AccessLogRecord acquire() {
+            int length = slots.length();
+            int start = ThreadLocalRandom.current().nextInt(length);
+            for (int probe = 0; probe < Math.min(MAX_PROBES, length); probe++) {
+                int i = (start + probe) % length;
+                AccessLogRecord record = slots.get(i);
+                if (record != null && slots.compareAndSet(i, record, null)) {
+                    return record;
+                }
+            }
+            return new AccessLogRecord();
+        }
+
+        /** Clear {@code record} and keep it for reuse when a free slot is found quickly. */
+        void release(AccessLogRecord record) {
+            record.reset();
+            int length = slots.length();
+            int start = ThreadLocalRandom.current().nextInt(length);
+            for (int probe = 0; probe < Math.min(MAX_PROBES, length); probe++) {
+                int i = (start + probe) % length;
+                if (slots.get(i) == null && slots.compareAndSet(i, null, record)) {
+                    return;
+                }
+            }
+        }
+    }
+}
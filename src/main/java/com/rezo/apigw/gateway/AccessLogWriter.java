@@ -0,0 +1,311 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access-log sink for {@link LoggingGlobalFilter}.
+ * <p>
+ * When {@code gateway.logging.async.enabled=true}, records (template + arguments) are pushed into a bounded
+ * {@link MpscRingBuffer} by the Netty event loops and a single writer thread formats them and appends them in
+ * batches to {@code ${logging.file.path}/<file-name>}. Otherwise records go straight to SLF4J as before.
+ * <p>
+ * Per-exchange {@link AccessLogRecord}s come from {@link #newRecord()} and are encoded by the writer thread in
+ * {@code gateway.logging.format} (see {@link AccessLogEncoder}); on the synchronous path they are logged as one text
+ * or JSON line. Either way the record goes back to the pool once it has been written or dropped.
+ * <p>
+ * When the file cannot be opened or written (a full disk, say) the writer keeps going: queued records go to SLF4J
+ * instead and the file is reopened with exponential backoff, from 100 ms up to 30 s between attempts.
+ */
+@Component
+public class AccessLogWriter implements SmartLifecycle {
+
+    private static final Logger accessLog = LoggerFactory.getLogger(LoggingGlobalFilter.class);
+    private static final Logger log = LoggerFactory.getLogger(AccessLogWriter.class);
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MIN_REOPEN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_REOPEN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final GatewayLoggingProperties.Async config;
+    private final GatewayLoggingProperties.AccessLogFormat format;
+    private final Path file;
+    private final MpscRingBuffer<Entry> buffer;
+    private final AccessLogRecord.Pool records;
+    private final int sampleThresholdSize;
+    private final Counter droppedOverflow;
+    private final Counter droppedSampled;
+    private final Counter droppedError;
+
+    private volatile boolean running;
+    /** Set once the writer thread has exited; producers that queued after its last drain drain themselves. */
+    private volatile boolean closed;
+    private volatile Thread writerThread;
+    /** First write failure of the current batch, owned by the writer thread. */
+    private IOException writeFailure;
+
+    public AccessLogWriter(GatewayLoggingProperties props, MeterRegistry meterRegistry,
+                           @Value("${logging.file.path:./logs/}") String logPath) {
+        this.config = props.getAsync();
+        this.format = props.getFormat();
+        this.file = Path.of(logPath).resolve(config.getFileName());
+        this.buffer = new MpscRingBuffer<>(config.getBufferSize());
+        this.records = new AccessLogRecord.Pool(props.getRecordPoolSize());
+        this.sampleThresholdSize = (int) (buffer.capacity() * config.getSampleThreshold());
+        String policy = config.getOverflowPolicy().name();
+        this.droppedOverflow = Counter.builder("gateway.accesslog.dropped")
+                .description("Access-log records discarded by the async writer")
+                .tag("policy", policy).tag("reason", "overflow")
+                .register(meterRegistry);
+        this.droppedSampled = Counter.builder("gateway.accesslog.dropped")
+                .description("Access-log records discarded by the async writer")
+                .tag("policy", policy).tag("reason", "sampled")
+                .register(meterRegistry);
+        this.droppedError = Counter.builder("gateway.accesslog.dropped")
+                .description("Access-log records discarded by the async writer")
+                .tag("policy", policy).tag("reason", "error")
+                .register(meterRegistry);
+        Gauge.builder("gateway.accesslog.queue.size", buffer, MpscRingBuffer::size)
+                .description("Access-log records waiting for the writer thread")
+                .register(meterRegistry);
+    }
+
+    /** Emit one access-log line using SLF4J {@code {}} placeholders. */
+    public void log(String template, Object... args) {
+        if (!config.isEnabled() || !running) {
+            accessLog.info(template, args);
+            return;
+        }
+        publish(new Entry(System.currentTimeMillis(), template, args, null));
+    }
+
+    /** An empty record for one exchange, to be passed to {@link #log(AccessLogRecord)} exactly once. */
+    AccessLogRecord newRecord() {
+        return records.acquire();
+    }
+
+    /** Emit one per-exchange record; the writer owns it from here on and recycles it after writing. */
+    void log(AccessLogRecord record) {
+        if (!config.isEnabled() || !running) {
+            logDirect(new Entry(record.timestamp, null, null, record));
+            return;
+        }
+        publish(new Entry(record.timestamp, null, null, record));
+    }
+
+    private void publish(Entry entry) {
+        switch (config.getOverflowPolicy()) {
+            case DROP -> offerOrDrop(entry);
+            case SAMPLE -> {
+                if (buffer.size() >= sampleThresholdSize && ThreadLocalRandom.current().nextDouble() >= config.getSampleRate()) {
+                    droppedSampled.increment();
+                    recycle(entry);
+                } else {
+                    offerOrDrop(entry);
+                }
+            }
+            case BLOCK -> {
+                while (!buffer.offer(entry)) {
+                    if (!running) {
+                        logDirect(entry);
+                        return;
+                    }
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                drainIfClosed();
+            }
+        }
+    }
+
+    private void logDirect(Entry entry) {
+        if (entry.record != null) {
+            accessLog.info(AccessLogEncoder.toLine(entry.record, format));
+            recycle(entry);
+        } else {
+            accessLog.info(entry.template, entry.args);
+        }
+    }
+
+    private void offerOrDrop(Entry entry) {
+        if (!buffer.offer(entry)) {
+            droppedOverflow.increment();
+            recycle(entry);
+        } else {
+            drainIfClosed();
+        }
+    }
+
+    /**
+     * A producer that saw {@code running} before {@link #stop()} may offer after the writer's last drain. The offer's
+     * CAS on the tail and the writer's volatile write of {@code closed} order the two sides: either the writer sees
+     * the claimed slot or the producer sees {@code closed} and drains it itself.
+     */
+    private void drainIfClosed() {
+        if (closed) {
+            drainOrphans();
+        }
+    }
+
+    private synchronized void drainOrphans() {
+        // a slot claimed but not yet published counts in size() before poll() can return it
+        while (buffer.size() > 0) {
+            if (buffer.drain(this::logDirect, Integer.MAX_VALUE) == 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void recycle(Entry entry) {
+        if (entry.record != null) {
+            records.release(entry.record);
+        }
+    }
+
+    double droppedCount() {
+        return droppedOverflow.count() + droppedSampled.count() + droppedError.count();
+    }
+
+    @Override
+    public void start() {
+        if (!config.isEnabled() || running) {
+            return;
+        }
+        closed = false;
+        running = true;
+        Thread thread = new Thread(this::drainLoop, "access-log-writer");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // start before and stop after the web server so in-flight exchanges can still log
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void drainLoop() {
+        int batchSize = Math.max(1, config.getBatchSize());
+        long backoffNanos = MIN_REOPEN_BACKOFF_NANOS;
+        boolean failing = false;
+        while (true) {
+            try (AccessLogEncoder out = AccessLogEncoder.create(format, new BufferedOutputStream(openFile(),
+                    WRITE_BUFFER_SIZE))) {
+                boolean wrote = false;
+                while (true) {
+                    int drained = buffer.drain(entry -> write(out, entry), batchSize);
+                    if (writeFailure != null) {
+                        IOException failure = writeFailure;
+                        writeFailure = null;
+                        throw failure;
+                    }
+                    if (drained > 0) {
+                        wrote = true;
+                    } else {
+                        out.flush();
+                        if (failing && wrote) {
+                            log.info("Access-log writer for {} resumed", file);
+                            failing = false;
+                            backoffNanos = MIN_REOPEN_BACKOFF_NANOS;
+                        }
+                        if (!running) {
+                            break;
+                        }
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                }
+                // stopped with everything drained
+                break;
+            } catch (IOException e) {
+                if (!running) {
+                    break;
+                }
+                if (!failing) {
+                    log.error("Access-log writer for {} failed, falling back to the application log: {}", file,
+                            e.getMessage());
+                    failing = true;
+                }
+                // until the file is reopened, queued entries go to the application log instead of piling up
+                long retryAt = System.nanoTime() + backoffNanos;
+                while (running && System.nanoTime() - retryAt < 0) {
+                    if (buffer.drain(this::logDirect, batchSize) == 0) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                }
+                backoffNanos = Math.min(backoffNanos * 2, MAX_REOPEN_BACKOFF_NANOS);
+            }
+        }
+        closed = true;
+        drainOrphans();
+    }
+
+    private OutputStream openFile() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return open(file);
+    }
+
+    /** The access-log file, opened for appending. */
+    OutputStream open(Path file) throws IOException {
+        return Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void write(AccessLogEncoder out, Entry entry) {
+        try {
+            if (entry.record != null) {
+                out.write(entry.record);
+            } else {
+                out.writeLine(entry.timestamp, MessageFormatter.arrayFormat(entry.template, entry.args).getMessage());
+            }
+        } catch (IOException e) {
+            droppedError.increment();
+            if (writeFailure == null) {
+                writeFailure = e;
+            }
+        } finally {
+            recycle(entry);
+        }
+    }
+
+    private record Entry(long timestamp, String template, Object[] args, AccessLogRecord record) {
+    }
+}
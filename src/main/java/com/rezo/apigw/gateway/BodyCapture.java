@@ -0,0 +1,104 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Bounded side buffer that records a prefix of a body while the original {@link DataBuffer}s flow on untouched.
+ * <p>
+ * {@link #append} copies at most {@code limit} bytes in total without moving the read position of the source
+ * buffer, so the same buffers can be forwarded (and released) by the downstream writer as usual. The side buffer
+ * is allocated lazily from the given factory and must be {@link #release() released} once it has been logged.
+ * Captures for the access log come from {@link CaptureBufferPool}, which also decides the capacities it grows to.
+ */
+final class BodyCapture {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    private final DataBufferFactory bufferFactory;
+    private final int limit;
+    private final int initialCapacity;
+    private final IntUnaryOperator sizeClass;
+    private final Runnable onRelease;
+    private DataBuffer buffer;
+    private long totalBytes;
+    private boolean released;
+
+    BodyCapture(DataBufferFactory bufferFactory, int limit, long contentLengthHint) {
+        this(bufferFactory, limit, contentLengthHint, IntUnaryOperator.identity(), () -> {
+        });
+    }
+
+    /**
+     * @param sizeClass maps a needed capacity to the (not smaller) capacity actually allocated or grown to
+     * @param onRelease called once, when the capture is released
+     */
+    BodyCapture(DataBufferFactory bufferFactory, int limit, long contentLengthHint, IntUnaryOperator sizeClass,
+                Runnable onRelease) {
+        this.bufferFactory = bufferFactory;
+        this.limit = Math.max(0, limit);
+        this.initialCapacity = (int) Math.min(this.limit,
+                contentLengthHint > 0 ? contentLengthHint : DEFAULT_INITIAL_CAPACITY);
+        this.sizeClass = sizeClass;
+        this.onRelease = onRelease;
+    }
+
+    /** Record up to the remaining capacity from {@code source}; the source read position is left unchanged. */
+    synchronized void append(DataBuffer source) {
+        int readable = source.readableByteCount();
+        totalBytes += readable;
+        int room = limit - capturedBytes();
+        if (released || readable == 0 || room <= 0) {
+            return;
+        }
+        int remaining = Math.min(room, readable);
+        if (buffer == null) {
+            buffer = bufferFactory.allocateBuffer(sizeClass.applyAsInt(Math.max(initialCapacity, remaining)));
+        }
+        int needed = buffer.writePosition() + remaining;
+        if (needed > buffer.capacity()) {
+            buffer.ensureWritable(Math.max(sizeClass.applyAsInt(needed), needed) - buffer.writePosition());
+        }
+        try (DataBuffer.ByteBufferIterator it = source.readableByteBuffers()) {
+            while (remaining > 0 && it.hasNext()) {
+                ByteBuffer chunk = it.next();
+                int take = Math.min(remaining, chunk.remaining());
+                buffer.write(chunk.slice(chunk.position(), take));
+                remaining -= take;
+            }
+        }
+    }
+
+    /** The captured prefix; empty when nothing was captured. Valid until {@link #release()}. */
+    synchronized DataBuffer content() {
+        return buffer != null ? buffer : bufferFactory.wrap(new byte[0]);
+    }
+
+    /** Total size of the observed body, including bytes beyond the capture limit. */
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    synchronized boolean isTruncated() {
+        return totalBytes > capturedBytes();
+    }
+
+    synchronized void release() {
+        if (!released) {
+            released = true;
+            if (buffer != null) {
+                DataBufferUtils.release(buffer);
+                buffer = null;
+            }
+            onRelease.run();
+        }
+    }
+
+    private int capturedBytes() {
+        return buffer != null ? buffer.readableByteCount() : 0;
+    }
+}
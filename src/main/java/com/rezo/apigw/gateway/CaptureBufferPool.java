@@ -0,0 +1,159 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers for the request and response bodies {@link LoggingGlobalFilter} captures, from a dedicated Netty
+ * {@link PooledByteBufAllocator} (off-heap by default) instead of the server's allocator or the Java heap, so bursts of
+ * large captures reuse pooled chunks rather than producing humongous heap allocations.
+ * <p>
+ * Captures start at, and grow through, the configured {@code size-classes} (for example 4KB, 16KB, 64KB, 256KB, 1MB),
+ * so a body of unknown length is copied a handful of times at most and buffers of the same class are recycled. Each
+ * exchange gets a {@link Scope} that releases whatever it still holds when the exchange ends.
+ * <p>
+ * {@code gateway.capture.pool.used} gauges the memory held by the pool, {@code .active} the captures not yet released
+ * and {@code .allocations} counts new captures. With {@code leak-detection=PARANOID} (meant for tests) every capture
+ * also records where it was allocated; {@link #outstanding()} lists the captures still unreleased and the ones left at
+ * shutdown are logged as leaks.
+ */
+@Component
+public class CaptureBufferPool implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CaptureBufferPool.class);
+
+    private final PooledByteBufAllocator allocator;
+    private final NettyDataBufferFactory bufferFactory;
+    private final int[] sizeClasses;
+    private final boolean paranoid;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<BodyCapture, Throwable> allocationSites = new ConcurrentHashMap<>();
+    private final Counter allocations;
+
+    public CaptureBufferPool(GatewayLoggingProperties props, MeterRegistry meterRegistry) {
+        GatewayLoggingProperties.Capture config = props.getCapture();
+        int arenas = Math.max(1, config.getArenas());
+        // thread caches only for the Netty threads: captures are also released from offload (virtual) threads
+        this.allocator = new PooledByteBufAllocator(config.isDirect(), config.isDirect() ? 0 : arenas,
+                config.isDirect() ? arenas : 0, PooledByteBufAllocator.defaultPageSize(),
+                PooledByteBufAllocator.defaultMaxOrder(), PooledByteBufAllocator.defaultSmallCacheSize(),
+                PooledByteBufAllocator.defaultNormalCacheSize(), false);
+        this.bufferFactory = new NettyDataBufferFactory(allocator);
+        this.sizeClasses = config.getSizeClasses().stream()
+                .mapToLong(DataSize::toBytes)
+                .filter(size -> size > 0 && size <= Integer.MAX_VALUE)
+                .mapToInt(size -> (int) size)
+                .sorted()
+                .distinct()
+                .toArray();
+        this.paranoid = config.getLeakDetection() == GatewayLoggingProperties.LeakDetection.PARANOID;
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        Gauge.builder("gateway.capture.pool.used", metric, m -> m.usedDirectMemory() + m.usedHeapMemory())
+                .description("Memory held by the body-capture buffer pool")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gateway.capture.pool.active", active, AtomicInteger::get)
+                .description("Body captures not released yet")
+                .register(meterRegistry);
+        this.allocations = Counter.builder("gateway.capture.pool.allocations")
+                .description("Body captures taken from the pool")
+                .register(meterRegistry);
+    }
+
+    /** Tracks the captures of one exchange. */
+    Scope scope() {
+        return new Scope();
+    }
+
+    /** Smallest size class that holds {@code capacity} bytes, or {@code capacity} itself beyond the largest one. */
+    int sizeClass(int capacity) {
+        for (int sizeClass : sizeClasses) {
+            if (sizeClass >= capacity) {
+                return sizeClass;
+            }
+        }
+        return capacity;
+    }
+
+    int active() {
+        return active.get();
+    }
+
+    /** Allocation sites of the captures not released yet (PARANOID leak detection only). */
+    List<Throwable> outstanding() {
+        return new ArrayList<>(allocationSites.values());
+    }
+
+    private BodyCapture capture(int limit, long contentLengthHint) {
+        allocations.increment();
+        active.incrementAndGet();
+        BodyCapture[] self = new BodyCapture[1];
+        BodyCapture capture = new BodyCapture(bufferFactory, limit, contentLengthHint, this::sizeClass, () -> {
+            active.decrementAndGet();
+            if (paranoid) {
+                allocationSites.remove(self[0]);
+            }
+        });
+        self[0] = capture;
+        if (paranoid) {
+            allocationSites.put(capture, new Throwable("Body capture allocated here"));
+        }
+        return capture;
+    }
+
+    @Override
+    public void destroy() {
+        int leaked = active.get();
+        if (leaked > 0) {
+            log.warn("{} body capture(s) were never released", leaked);
+            allocationSites.values().forEach(site -> log.warn("Unreleased body capture", site));
+        }
+    }
+
+    /**
+     * The captures of one exchange; {@link #releaseAll()} releases those that are still held and closes the scope, so
+     * a capture taken afterwards (by a tee still flowing when the exchange ended) comes back already released.
+     */
+    final class Scope {
+        private List<BodyCapture> captures;
+        private boolean closed;
+
+        synchronized BodyCapture capture(int limit, long contentLengthHint) {
+            BodyCapture capture = CaptureBufferPool.this.capture(limit, contentLengthHint);
+            if (closed) {
+                // appends to a released capture are ignored
+                capture.release();
+                return capture;
+            }
+            if (captures == null) {
+                captures = new ArrayList<>(2);
+            }
+            captures.add(capture);
+            return capture;
+        }
+
+        synchronized void releaseAll() {
+            closed = true;
+            if (captures != null) {
+                captures.forEach(BodyCapture::release);
+                captures = null;
+            }
+        }
+    }
+}
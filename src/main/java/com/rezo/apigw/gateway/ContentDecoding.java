@@ -0,0 +1,86 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes captured {@code gzip} / {@code deflate} bodies for the access log, so compressed upstream responses are
+ * logged as text instead of as compressed bytes read as UTF-8.
+ * <p>
+ * Works on the bounded capture only, never on the bytes forwarded to the client, and stops after {@code limit}
+ * decoded bytes: a capture cut off at {@code maxBodySize} decodes to its prefix, and a small body cannot inflate
+ * into an unbounded one.
+ */
+final class ContentDecoding {
+
+    private ContentDecoding() {
+    }
+
+    /** Whether {@code contentEncoding} (a Content-Encoding header value) means the body is not plain. */
+    static boolean isEncoded(String contentEncoding) {
+        return contentEncoding != null && !contentEncoding.isBlank() && !"identity".equalsIgnoreCase(contentEncoding.trim());
+    }
+
+    /**
+     * Up to {@code limit} decoded bytes of {@code body}, or {@code null} when the encoding is not gzip or deflate or
+     * the body does not decode. The read position of {@code body} is left unchanged.
+     */
+    static byte[] decode(DataBuffer body, String contentEncoding, int limit) {
+        byte[] encoded = new byte[body.readableByteCount()];
+        int offset = 0;
+        try (DataBuffer.ByteBufferIterator it = body.readableByteBuffers()) {
+            while (it.hasNext()) {
+                ByteBuffer chunk = it.next();
+                int length = chunk.remaining();
+                chunk.get(encoded, offset, length);
+                offset += length;
+            }
+        }
+        String coding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        // "deflate" should be zlib-wrapped, but some servers send a raw deflate stream
+        Inflater inflater = "deflate".equals(coding) ? new Inflater(!isZlib(encoded)) : null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, Math.max(256, encoded.length * 4)));
+        try (InputStream in = inflating(encoded, coding, inflater)) {
+            if (in == null) {
+                return null;
+            }
+            byte[] chunk = new byte[8192];
+            int read;
+            while (out.size() < limit && (read = in.read(chunk, 0, Math.min(chunk.length, limit - out.size()))) > 0) {
+                out.write(chunk, 0, read);
+            }
+        } catch (EOFException e) {
+            // truncated at the capture limit: keep what was decoded so far
+        } catch (IOException e) {
+            return out.size() > 0 ? out.toByteArray() : null;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static InputStream inflating(byte[] encoded, String coding, Inflater inflater) throws IOException {
+        ByteArrayInputStream raw = new ByteArrayInputStream(encoded);
+        return switch (coding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(raw);
+            case "deflate" -> new InflaterInputStream(raw, inflater);
+            default -> null;
+        };
+    }
+
+    private static boolean isZlib(byte[] encoded) {
+        return encoded.length >= 2 && (encoded[0] & 0x0F) == 8 && ((encoded[0] & 0xFF) << 8 | (encoded[1] & 0xFF)) % 31 == 0;
+    }
+}
@@ -0,0 +1,268 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayEventLoopProperties;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how late tasks run on the reactor-netty server event loops.
+ * <p>
+ * Every {@code gateway.event-loop.probe-interval} a no-op probe is submitted to each loop; the lag of a loop is the
+ * delay between submission and execution, or - while a probe is still waiting - how long it has been waiting so far.
+ * Each loop gets a {@code gateway.eventloop.lag} gauge and a {@code gateway.eventloop.delay} timer (histogram of the
+ * probe delays), tagged {@code loop=<index>}.
+ * <p>
+ * A loop whose probe has waited longer than {@code stall-threshold} is busy or blocked right now, so the stack of its
+ * thread is sampled (once per stall) and logged; the latest samples are served by {@link EventLoopsEndpoint}.
+ */
+@Component
+public class EventLoopLagMonitor implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLoopLagMonitor.class);
+
+    private final ObjectProvider<ReactorResourceFactory> resourceFactory;
+    private final GatewayEventLoopProperties config;
+    private final MeterRegistry meterRegistry;
+    private final long stallThresholdNanos;
+    private final Deque<StallSample> samples = new ArrayDeque<>();
+    private volatile List<Probe> probes = List.of();
+    private List<Meter> meters = List.of();
+    private ScheduledExecutorService scheduler;
+
+    public EventLoopLagMonitor(ObjectProvider<ReactorResourceFactory> resourceFactory, GatewayEventLoopProperties config,
+                               MeterRegistry meterRegistry) {
+        this.resourceFactory = resourceFactory;
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.stallThresholdNanos = config.getStallThreshold().toNanos();
+    }
+
+    /** Current worst lag across all server event loops, in nanoseconds. */
+    public long maxLagNanos() {
+        long now = System.nanoTime();
+        long max = 0;
+        for (Probe probe : probes) {
+            max = Math.max(max, probe.lagNanos(now));
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        List<Probe> loops = new ArrayList<>();
+        List<Meter> loopMeters = new ArrayList<>();
+        for (EventExecutor executor : serverLoops()) {
+            String loop = Integer.toString(loops.size());
+            Timer delay = Timer.builder("gateway.eventloop.delay")
+                    .description("Delay between submitting a probe task to the event loop and its execution")
+                    .tag("loop", loop)
+                    .publishPercentileHistogram()
+                    .serviceLevelObjectives(config.getStallThreshold())
+                    .register(meterRegistry);
+            Probe probe = new Probe(loops.size(), executor, delay);
+            probe.register();
+            loops.add(probe);
+            loopMeters.add(delay);
+            loopMeters.add(TimeGauge.builder("gateway.eventloop.lag", probe, TimeUnit.NANOSECONDS,
+                            p -> p.lagNanos(System.nanoTime()))
+                    .description("Current scheduling lag of the event loop")
+                    .tag("loop", loop)
+                    .register(meterRegistry));
+        }
+        probes = List.copyOf(loops);
+        meters = List.copyOf(loopMeters);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "event-loop-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, config.getProbeInterval().toMillis());
+        scheduler.scheduleAtFixedRate(this::probeAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        probes = List.of();
+        meters.forEach(meterRegistry::remove);
+        meters = List.of();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    List<Probe> probes() {
+        return probes;
+    }
+
+    /** The most recent stall samples, newest first. */
+    List<StallSample> stallSamples() {
+        synchronized (samples) {
+            return List.copyOf(samples);
+        }
+    }
+
+    GatewayEventLoopProperties config() {
+        return config;
+    }
+
+    private void probeAll() {
+        long now = System.nanoTime();
+        for (Probe probe : probes) {
+            Thread thread = probe.stalled(now, stallThresholdNanos);
+            if (thread != null) {
+                sample(probe, thread, now);
+            }
+            probe.submit(now);
+        }
+    }
+
+    private void sample(Probe probe, Thread thread, long now) {
+        StackTraceElement[] stack = thread.getStackTrace();
+        List<String> frames = Arrays.stream(stack)
+                .limit(Math.max(1, config.getStackDepth()))
+                .map(StackTraceElement::toString)
+                .toList();
+        long lagMillis = TimeUnit.NANOSECONDS.toMillis(probe.lagNanos(now));
+        log.warn("Event loop {} ({}) has not run a task for {} ms, currently at:\n\tat {}", probe.index(), thread.getName(),
+                lagMillis, String.join("\n\tat ", frames));
+        synchronized (samples) {
+            samples.addFirst(new StallSample(probe.index(), thread.getName(), Instant.now(), lagMillis, frames));
+            while (samples.size() > Math.max(0, config.getMaxSamples())) {
+                samples.removeLast();
+            }
+        }
+    }
+
+    private EventLoopGroup serverLoops() {
+        ReactorResourceFactory factory = resourceFactory.getIfAvailable();
+        LoopResources loops = factory != null && factory.getLoopResources() != null ? factory.getLoopResources() : HttpResources.get();
+        log.debug("Monitoring event-loop lag of {}", loops);
+        return loops.onServer(LoopResources.DEFAULT_NATIVE);
+    }
+
+    /** A stack sample of an event-loop thread taken while the loop was stalled. */
+    record StallSample(int loop, String thread, Instant time, long lagMillis, List<String> stack) {
+    }
+
+    /** Lag state of a single event loop; submitted from the monitor thread, completed on the loop itself. */
+    static final class Probe implements Runnable {
+        private final int index;
+        private final EventExecutor executor;
+        private final Timer delay;
+        private volatile long submittedAt;
+        private volatile boolean pending;
+        private volatile boolean sampled;
+        private volatile long lastLagNanos;
+        private volatile Thread thread;
+
+        Probe(int index, EventExecutor executor, Timer delay) {
+            this.index = index;
+            this.executor = executor;
+            this.delay = delay;
+        }
+
+        int index() {
+            return index;
+        }
+
+        EventExecutor executor() {
+            return executor;
+        }
+
+        /** The loop's thread, once a task of this probe has run on it. */
+        Thread thread() {
+            return thread;
+        }
+
+        Timer delay() {
+            return delay;
+        }
+
+        /** The loop's thread if the pending probe has waited past {@code thresholdNanos} and was not sampled yet. */
+        Thread stalled(long now, long thresholdNanos) {
+            if (!pending || sampled || now - submittedAt <= thresholdNanos) {
+                return null;
+            }
+            sampled = true;
+            return thread != null ? thread : findThread();
+        }
+
+        /** Learn the loop's thread before the first probe, so a stall right after start can still be sampled. */
+        void register() {
+            try {
+                executor.execute(() -> thread = Thread.currentThread());
+            } catch (RejectedExecutionException e) {
+                // shutting down: nothing to monitor
+            }
+        }
+
+        /** The loop was already stalled when registered: look its thread up instead. */
+        private Thread findThread() {
+            for (Thread candidate : Thread.getAllStackTraces().keySet()) {
+                if (executor.inEventLoop(candidate)) {
+                    thread = candidate;
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        void submit(long now) {
+            if (pending) {
+                return; // previous probe still queued: the loop is busy, do not pile up more work
+            }
+            submittedAt = now;
+            sampled = false;
+            pending = true;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                pending = false;
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            lastLagNanos = System.nanoTime() - submittedAt;
+            pending = false;
+            delay.record(lastLagNanos, TimeUnit.NANOSECONDS);
+        }
+
+        long lagNanos(long now) {
+            return pending ? Math.max(lastLagNanos, now - submittedAt) : lastLagNanos;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /actuator/eventloops}: current and recent worst lag of every server event loop as measured by
+ * {@link EventLoopLagMonitor}, plus the latest stack samples of loops that stalled past
+ * {@code gateway.event-loop.stall-threshold}, newest first.
+ * <p>
+ * Thread names and stacks are internals: like {@link MaskingRulesEndpoint} it is only served on the internal
+ * management port, never on the gateway port.
+ */
+@Component
+@Endpoint(id = "eventloops")
+public class EventLoopsEndpoint {
+
+    private final EventLoopLagMonitor monitor;
+
+    public EventLoopsEndpoint(EventLoopLagMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @ReadOperation
+    public Map<String, Object> eventLoops() {
+        long now = System.nanoTime();
+        List<Map<String, Object>> loops = new ArrayList<>();
+        for (EventLoopLagMonitor.Probe probe : monitor.probes()) {
+            Thread thread = probe.thread();
+            Map<String, Object> loop = new LinkedHashMap<>();
+            loop.put("loop", probe.index());
+            loop.put("thread", thread != null ? thread.getName() : null);
+            loop.put("lagMillis", TimeUnit.NANOSECONDS.toMillis(probe.lagNanos(now)));
+            loop.put("maxLagMillis", (long) probe.delay().max(TimeUnit.MILLISECONDS));
+            loop.put("probes", probe.delay().count());
+            loops.add(loop);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("probeIntervalMillis", monitor.config().getProbeInterval().toMillis());
+        result.put("stallThresholdMillis", monitor.config().getStallThreshold().toMillis());
+        result.put("loops", loops);
+        result.put("stalls", monitor.stallSamples());
+        return result;
+    }
+}
@@ -0,0 +1,178 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-route latency timers and body-size summaries, tagged by {@code route}, {@code method} and {@code status}
+ * (status class, or {@code CANCELLED}), each publishing the configured SLO buckets:
+ * <ul>
+ *     <li>{@code gateway.exchange.duration}: filter entry to exchange completion</li>
+ *     <li>{@code gateway.exchange.overhead}: filter entry to the request being handed to the upstream</li>
+ *     <li>{@code gateway.upstream.duration}: upstream request to upstream response headers</li>
+ *     <li>{@code gateway.exchange.request.size} / {@code gateway.exchange.response.size}: body bytes</li>
+ * </ul>
+ * plus {@code gateway.exchange.phase}, tagged by {@code route} and {@code phase} only, for the {@link ExchangeTimings}
+ * phases: {@code request_body}, {@code upstream_connect}, {@code upstream_wait} and {@code response_write}.
+ * <p>
+ * Meters are resolved once per (route, method, status) slot and cached in a per-route array, so recording an
+ * exchange allocates nothing once a slot is warm. Methods outside the standard set share the {@code OTHER} tag.
+ */
+@Component
+public class ExchangeMetrics {
+
+    private static final List<HttpMethod> METHODS = List.of(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT,
+            HttpMethod.PATCH, HttpMethod.DELETE, HttpMethod.HEAD, HttpMethod.OPTIONS);
+    private static final String OTHER_METHOD = "OTHER";
+    private static final String[] STATUSES = {"1xx", "2xx", "3xx", "4xx", "5xx", "UNKNOWN", "CANCELLED"};
+    private static final int UNKNOWN_STATUS = 5;
+    private static final int CANCELLED = 6;
+    private static final String UNROUTED = "none";
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final Duration[] latencySlos;
+    private final double[] sizeSlos;
+    private final ConcurrentHashMap<String, RouteMeters> byRoute = new ConcurrentHashMap<>();
+
+    public ExchangeMetrics(GatewayLoggingProperties props, MeterRegistry registry) {
+        GatewayLoggingProperties.Metrics config = props.getMetrics();
+        this.registry = registry;
+        this.enabled = config.isEnabled();
+        this.latencySlos = config.getLatencySlos().toArray(Duration[]::new);
+        this.sizeSlos = config.getSizeSlos().stream().mapToDouble(DataSize::toBytes).toArray();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record one finished exchange.
+     *
+     * @param requestBytes  request body size, or a negative value when unknown
+     * @param responseBytes response body size, or a negative value when unknown
+     */
+    void record(String routeId, HttpMethod method, HttpStatusCode status, boolean cancelled, ExchangeTimings timings,
+                long end, long requestBytes, long responseBytes) {
+        RouteMeters route = route(routeId != null ? routeId : UNROUTED);
+        recordPhase(route.requestBody, timings.requestBodyNanos());
+        recordPhase(route.upstreamConnect, timings.upstreamConnectNanos());
+        recordPhase(route.upstreamWait, timings.upstreamWaitNanos());
+        recordPhase(route.responseWrite, timings.responseWriteNanos());
+
+        Meters meters = route.meters(methodIndex(method), cancelled ? CANCELLED : statusIndex(status));
+        meters.total.record(end - timings.start, TimeUnit.NANOSECONDS);
+        if (timings.upstreamRequest != 0) {
+            meters.overhead.record(timings.upstreamRequest - timings.start, TimeUnit.NANOSECONDS);
+            if (timings.upstreamResponse != 0) {
+                meters.upstream.record(timings.upstreamResponse - timings.upstreamRequest, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (requestBytes >= 0) {
+            meters.requestSize.record(requestBytes);
+        }
+        if (responseBytes >= 0) {
+            meters.responseSize.record(responseBytes);
+        }
+    }
+
+    private RouteMeters route(String routeId) {
+        RouteMeters route = byRoute.get(routeId);
+        return route != null ? route : byRoute.computeIfAbsent(routeId, RouteMeters::new);
+    }
+
+    private static void recordPhase(Timer timer, long nanos) {
+        if (nanos >= 0) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String name, String description, Tags tags) {
+        return Timer.builder(name).description(description).tags(tags)
+                .serviceLevelObjectives(latencySlos)
+                .register(registry);
+    }
+
+    private static int methodIndex(HttpMethod method) {
+        int index = METHODS.indexOf(method);
+        return index >= 0 ? index : METHODS.size();
+    }
+
+    private static int statusIndex(HttpStatusCode status) {
+        if (status == null) {
+            return UNKNOWN_STATUS;
+        }
+        int series = status.value() / 100;
+        return series >= 1 && series <= 5 ? series - 1 : UNKNOWN_STATUS;
+    }
+
+    private final class RouteMeters {
+        final String routeId;
+        final Meters[] slots = new Meters[(METHODS.size() + 1) * STATUSES.length];
+        final Timer requestBody;
+        final Timer upstreamConnect;
+        final Timer upstreamWait;
+        final Timer responseWrite;
+
+        RouteMeters(String routeId) {
+            this.routeId = routeId;
+            requestBody = phase("request_body");
+            upstreamConnect = phase("upstream_connect");
+            upstreamWait = phase("upstream_wait");
+            responseWrite = phase("response_write");
+        }
+
+        private Timer phase(String phase) {
+            return timer("gateway.exchange.phase", "Time spent in one phase of the exchange",
+                    Tags.of("route", routeId, "phase", phase));
+        }
+
+        Meters meters(int method, int status) {
+            int slot = method * STATUSES.length + status;
+            Meters meters = slots[slot];
+            if (meters == null) {
+                // a racing thread may build the same slot too: the registry hands both the same meters
+                meters = new Meters(Tags.of("route", routeId,
+                        "method", method < METHODS.size() ? METHODS.get(method).name() : OTHER_METHOD,
+                        "status", STATUSES[status]));
+                slots[slot] = meters;
+            }
+            return meters;
+        }
+    }
+
+    private final class Meters {
+        final Timer total;
+        final Timer overhead;
+        final Timer upstream;
+        final DistributionSummary requestSize;
+        final DistributionSummary responseSize;
+
+        Meters(Tags tags) {
+            total = timer("gateway.exchange.duration", "Time from gateway entry to exchange completion", tags);
+            overhead = timer("gateway.exchange.overhead", "Time spent in the gateway before the upstream call", tags);
+            upstream = timer("gateway.upstream.duration", "Time from upstream request to upstream response headers", tags);
+            requestSize = summary("gateway.exchange.request.size", "Request body size", tags);
+            responseSize = summary("gateway.exchange.response.size", "Response body size", tags);
+        }
+
+        private DistributionSummary summary(String name, String description, Tags tags) {
+            return DistributionSummary.builder(name).description(description).tags(tags).baseUnit("bytes")
+                    .serviceLevelObjectives(sizeSlos)
+                    .register(registry);
+        }
+    }
+}
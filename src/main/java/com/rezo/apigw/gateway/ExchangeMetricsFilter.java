@@ -0,0 +1,138 @@
+package com.rezo.apigw.gateway;
+
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Starts the {@link ExchangeTimings} of every exchange and feeds {@link ExchangeMetrics} when it finishes, whether or
+ * not its route logs anything.
+ * <p>
+ * Runs ahead of {@link LoggingGlobalFilter} so the logging work is part of the measured time. The request body (when
+ * there is one) and the response are decorated to mark when the body was fully read, and when the first and last
+ * response bytes were written. Body sizes come from {@code Content-Length} when present; only bodies without one are
+ * counted as they stream through. With {@code gateway.logging.metrics.enabled=false} the timings are still taken
+ * (the access log uses them), only the meters are skipped.
+ */
+@Component
+@RequiredArgsConstructor
+public class ExchangeMetricsFilter implements GlobalFilter, Ordered {
+
+    private final ExchangeMetrics metrics;
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 5;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ExchangeTimings timings = ExchangeTimings.start(exchange);
+
+        ServerHttpRequest request = exchange.getRequest();
+        long requestLength = request.getHeaders().getContentLength();
+        TimedRequest timedRequest = requestLength > 0 || isChunked(request)
+                ? new TimedRequest(request, timings, requestLength < 0) : null;
+        TimedResponse timedResponse = new TimedResponse(exchange.getResponse(), timings);
+        ServerWebExchange timed = exchange.mutate()
+                .request(timedRequest != null ? timedRequest : request)
+                .response(timedResponse)
+                .build();
+
+        Mono<Void> result = chain.filter(timed);
+        if (!metrics.isEnabled()) {
+            return result;
+        }
+        return result.doFinally(signal -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            metrics.record(route != null ? route.getId() : null, request.getMethod(),
+                    exchange.getResponse().getStatusCode(), signal == SignalType.CANCEL, timings, System.nanoTime(),
+                    timedRequest != null && timedRequest.counting ? timedRequest.bytes : requestLength,
+                    timedResponse.bytes());
+        });
+    }
+
+    private static boolean isChunked(ServerHttpRequest request) {
+        return request.getHeaders().containsKey("Transfer-Encoding");
+    }
+
+    private static final class TimedRequest extends ServerHttpRequestDecorator {
+        private final ExchangeTimings timings;
+        private final boolean counting;
+        private long bytes;
+
+        TimedRequest(ServerHttpRequest delegate, ExchangeTimings timings, boolean counting) {
+            super(delegate);
+            this.timings = timings;
+            this.counting = counting;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            Flux<DataBuffer> body = super.getBody();
+            if (counting) {
+                body = body.doOnNext(buffer -> bytes += buffer.readableByteCount());
+            }
+            return body.doOnComplete(() -> timings.requestBodyRead = System.nanoTime());
+        }
+    }
+
+    private static final class TimedResponse extends ServerHttpResponseDecorator {
+        private final ExchangeTimings timings;
+        private long bytes = -1;
+
+        TimedResponse(ServerHttpResponse delegate, ExchangeTimings timings) {
+            super(delegate);
+            this.timings = timings;
+        }
+
+        /** Bytes written, else the declared Content-Length (e.g. after {@code setComplete()}), else -1. */
+        long bytes() {
+            return bytes >= 0 ? bytes : getHeaders().getContentLength();
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            boolean counting = getHeaders().getContentLength() < 0;
+            if (counting) {
+                bytes = 0;
+            }
+            return super.writeWith(Flux.from(body).doOnNext(buffer -> onChunk(buffer, counting)))
+                    .doOnSuccess(done -> timings.lastResponseByte = System.nanoTime());
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            boolean counting = getHeaders().getContentLength() < 0;
+            if (counting) {
+                bytes = 0;
+            }
+            return super.writeAndFlushWith(Flux.from(body)
+                            .map(chunk -> Flux.from(chunk).doOnNext(buffer -> onChunk(buffer, counting))))
+                    .doOnSuccess(done -> timings.lastResponseByte = System.nanoTime());
+        }
+
+        private void onChunk(DataBuffer buffer, boolean counting) {
+            if (timings.firstResponseByte == 0) {
+                timings.firstResponseByte = System.nanoTime();
+            }
+            if (counting) {
+                bytes += buffer.readableByteCount();
+            }
+        }
+    }
+}
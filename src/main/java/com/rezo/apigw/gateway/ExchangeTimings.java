@@ -0,0 +1,81 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Per-exchange stopwatch: {@link System#nanoTime()} checkpoints stored in the exchange attributes (and, around the
+ * upstream call, in the Reactor context) by {@link ExchangeMetricsFilter} and filled in by the filters and client
+ * hooks that observe each point.
+ * <p>
+ * Checkpoints are written and read along the exchange's own signal chain, which orders them; zero means the point
+ * was not reached (e.g. no request body or no upstream call). Phases derived from them tell whether a slow exchange
+ * spent its time reading the request body, connecting to or waiting on the upstream, or writing the response.
+ */
+final class ExchangeTimings {
+
+    static final String ATTRIBUTE = ExchangeTimings.class.getName();
+    /** Key under which {@link UpstreamTimingFilter} exposes the timings to the HTTP client hooks. */
+    static final Class<ExchangeTimings> CONTEXT_KEY = ExchangeTimings.class;
+
+    /** Filter entry. */
+    final long start;
+    /** Wall-clock time of {@link #start}, for log timestamps only. */
+    final long startEpochMillis;
+    /** Request body fully read (by whoever consumed it, usually the routing filter). */
+    long requestBodyRead;
+    /** Request handed to the upstream routing filter. */
+    long upstreamRequest;
+    /** Upstream connection acquired and the request about to be sent. */
+    long upstreamConnected;
+    /** Upstream response headers received. */
+    long upstreamResponse;
+    /** First response body chunk handed to the client connection. */
+    long firstResponseByte;
+    /** Response body fully written. */
+    long lastResponseByte;
+
+    ExchangeTimings(long start, long startEpochMillis) {
+        this.start = start;
+        this.startEpochMillis = startEpochMillis;
+    }
+
+    static ExchangeTimings of(ServerWebExchange exchange) {
+        return exchange.getAttribute(ATTRIBUTE);
+    }
+
+    /** The exchange's timings, starting them now if no earlier filter did. */
+    static ExchangeTimings start(ServerWebExchange exchange) {
+        ExchangeTimings timings = of(exchange);
+        if (timings == null) {
+            timings = new ExchangeTimings(System.nanoTime(), System.currentTimeMillis());
+            exchange.getAttributes().put(ATTRIBUTE, timings);
+        }
+        return timings;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    long requestBodyNanos() {
+        return between(start, requestBodyRead);
+    }
+
+    long upstreamConnectNanos() {
+        return between(upstreamRequest, upstreamConnected);
+    }
+
+    /** Connected (or handed over, when the connect hook did not fire) to response headers. */
+    long upstreamWaitNanos() {
+        return between(upstreamConnected != 0 ? upstreamConnected : upstreamRequest, upstreamResponse);
+    }
+
+    long responseWriteNanos() {
+        return between(firstResponseByte, lastResponseByte);
+    }
+
+    /** Nanos from {@code from} to {@code to}, or -1 when either checkpoint was not reached. */
+    private static long between(long from, long to) {
+        return from != 0 && to != 0 ? to - from : -1;
+    }
+}
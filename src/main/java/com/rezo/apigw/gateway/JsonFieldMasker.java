@@ -0,0 +1,77 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+
+/**
+ * Single-pass JSON masker built on Jackson's streaming API.
+ * <p>
+ * Tokens are copied from a {@link JsonParser} straight into a {@link JsonGenerator}; whenever a field name
+ * matches one of the configured names its whole value (string, number, boolean, object or array) is replaced
+ * with {@link MaskingRules#MASK}. All configured fields are handled in the same pass over the input bytes.
+ * <p>
+ * Instances are stateless and thread-safe.
+ */
+final class JsonFieldMasker {
+
+    private final JsonFactory jsonFactory;
+
+    JsonFieldMasker(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Mask the given JSON document.
+     *
+     * @throws IOException when the input is not well-formed JSON (including a body truncated by
+     *                     {@code maxBodySize}); callers are expected to fall back to a tolerant masker
+     */
+    String mask(byte[] json, int offset, int length, NameTrie fields) throws IOException {
+        SegmentedStringWriter out = new SegmentedStringWriter(new BufferRecycler());
+        try (JsonParser parser = jsonFactory.createParser(json, offset, length);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            copyMasked(parser, generator, fields);
+        }
+        return out.getAndClear();
+    }
+
+    /** Mask the readable bytes of {@code json}; the buffer read position is left unchanged. */
+    String mask(DataBuffer json, NameTrie fields) throws IOException {
+        int readPosition = json.readPosition();
+        SegmentedStringWriter out = new SegmentedStringWriter(new BufferRecycler());
+        try (JsonParser parser = jsonFactory.createParser(json.asInputStream());
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            copyMasked(parser, generator, fields);
+        } finally {
+            json.readPosition(readPosition);
+        }
+        return out.getAndClear();
+    }
+
+    private static void copyMasked(JsonParser parser, JsonGenerator generator, NameTrie fields) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                generator.writeFieldName(name);
+                if (fields.contains(name)) {
+                    JsonToken value = parser.nextToken();
+                    if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+                    generator.writeString(MaskingRules.MASK_JSON);
+                }
+                continue;
+            }
+            // exact: decimals are copied as BigDecimal, never rounded through a double
+            generator.copyCurrentEventExact(parser);
+        }
+    }
+}
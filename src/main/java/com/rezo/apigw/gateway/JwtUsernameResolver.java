@@ -0,0 +1,138 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the username carried by a Bearer JWT, caching the result per token.
+ * <p>
+ * Entries expire at the token's {@code exp} claim (bounded by {@code gateway.logging.jwt-cache.max-ttl}) and the
+ * cache is size-bounded; hit/miss statistics are published as {@code cache.*{cache=gateway.jwt.username}}.
+ * On a miss the payload is read with a streaming parser that stops as soon as the highest-priority claim and
+ * {@code exp} have been seen. The signature is not verified; the value is only used for logging.
+ */
+@Component
+public class JwtUsernameResolver {
+
+    private static final String EXP_CLAIM = "exp";
+    /** Cached marker for tokens that carry no usable username claim. */
+    private static final String NO_USERNAME = "";
+
+    private final JsonFactory jsonFactory;
+    private final List<String> claimKeys;
+    private final long defaultTtlNanos;
+    private final long maxTtlNanos;
+    private final Cache<String, CachedUsername> cache;
+
+    public JwtUsernameResolver(GatewayLoggingProperties props, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jsonFactory = objectMapper.getFactory();
+        List<String> keys = new ArrayList<>(props.getUsernameClaimKeys());
+        // common fallbacks, lowest priority
+        keys.add("preferred_username");
+        keys.add("name");
+        this.claimKeys = List.copyOf(keys);
+        GatewayLoggingProperties.JwtCache config = props.getJwtCache();
+        this.defaultTtlNanos = config.getDefaultTtl().toNanos();
+        this.maxTtlNanos = config.getMaxTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfter(new ExpireAtTokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.jwt.username");
+    }
+
+    /** Username for the given compact JWT, or {@code null} when it has none or cannot be decoded. */
+    public String resolve(String jwt) {
+        if (jwt == null || jwt.isEmpty()) {
+            return null;
+        }
+        String username = cache.get(jwt, this::decode).username();
+        return username.isEmpty() ? null : username;
+    }
+
+    private CachedUsername decode(String jwt) {
+        int first = jwt.indexOf('.');
+        int second = first < 0 ? -1 : jwt.indexOf('.', first + 1);
+        if (first < 0) {
+            return new CachedUsername(NO_USERNAME, -1);
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(jwt.substring(first + 1, second < 0 ? jwt.length() : second));
+            return readClaims(payload);
+        } catch (IllegalArgumentException | IOException e) {
+            return new CachedUsername(NO_USERNAME, -1);
+        }
+    }
+
+    private CachedUsername readClaims(byte[] payload) throws IOException {
+        String best = null;
+        int bestRank = Integer.MAX_VALUE;
+        long exp = -1;
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new CachedUsername(NO_USERNAME, -1);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value.isStructStart()) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (EXP_CLAIM.equals(name) && value.isNumeric()) {
+                    exp = parser.getValueAsLong(-1);
+                } else if (value != JsonToken.VALUE_NULL) {
+                    int rank = claimKeys.indexOf(name);
+                    if (rank >= 0 && rank < bestRank) {
+                        best = parser.getValueAsString();
+                        bestRank = rank;
+                    }
+                }
+                if (bestRank == 0 && exp >= 0) {
+                    break;
+                }
+            }
+        }
+        return new CachedUsername(best != null ? best : NO_USERNAME, exp);
+    }
+
+    private record CachedUsername(String username, long expEpochSeconds) {
+    }
+
+    private final class ExpireAtTokenExpiry implements Expiry<String, CachedUsername> {
+        @Override
+        public long expireAfterCreate(String token, CachedUsername value, long currentTime) {
+            if (value.expEpochSeconds() < 0) {
+                return defaultTtlNanos;
+            }
+            long remainingMillis = TimeUnit.SECONDS.toMillis(value.expEpochSeconds()) - System.currentTimeMillis();
+            return Math.max(0, Math.min(maxTtlNanos, TimeUnit.MILLISECONDS.toNanos(remainingMillis)));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, CachedUsername value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String token, CachedUsername value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.rezo.apigw.gateway;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rezo.apigw.config.GatewayRateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per route and caller, kept in gateway memory (no Redis round trip per request).
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding its theoretical arrival time (GCRA): taking a token moves it one
+ * emission interval ({@code 1s / replenish-rate}) ahead, and the request is refused when that would put it more than
+ * {@code burst-capacity} intervals ahead of now. Updates are a compare-and-set loop, so concurrent requests from one
+ * caller never block each other, and an idle bucket needs no refill work.
+ * <p>
+ * Buckets live in a Caffeine cache bounded by {@code gateway.rate-limit.max-keys} and dropped after
+ * {@code idle-timeout} without requests, so memory stays bounded however many distinct callers show up.
+ * {@code gateway.rate-limit.buckets} gauges the buckets kept and {@code gateway.rate-limit.rejected} counts refusals
+ * per route.
+ */
+@Component
+public class LocalRateLimiter {
+
+    private final boolean enabled;
+    private final GatewayRateLimitProperties.KeyResolver keyResolver;
+    private final Set<String> trustedProxies;
+    private final Limit defaultLimit;
+    /** Route overrides; routes that opted out map to {@link Limit#NONE}. */
+    private final Map<String, Limit> routeLimits;
+    private final LongSupplier clock;
+    private final Cache<Key, AtomicLong> buckets;
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LocalRateLimiter(GatewayRateLimitProperties props, MeterRegistry registry) {
+        this(props, registry, System::nanoTime);
+    }
+
+    LocalRateLimiter(GatewayRateLimitProperties props, MeterRegistry registry, LongSupplier clock) {
+        this.enabled = props.isEnabled();
+        this.keyResolver = props.getKeyResolver();
+        this.trustedProxies = Set.copyOf(props.getTrustedProxies());
+        this.defaultLimit = Limit.of(props.getReplenishRate(), props.getBurstCapacity());
+        Map<String, Limit> limits = new HashMap<>();
+        props.getRoutes().forEach((routeId, route) -> limits.put(routeId, !route.isEnabled() ? Limit.NONE : Limit.of(
+                route.getReplenishRate() != null ? route.getReplenishRate() : props.getReplenishRate(),
+                route.getBurstCapacity() != null ? route.getBurstCapacity() : props.getBurstCapacity())));
+        this.routeLimits = Map.copyOf(limits);
+        this.clock = clock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(props.getMaxKeys())
+                .expireAfterAccess(props.getIdleTimeout())
+                .ticker(clock::getAsLong)
+                .build();
+        this.registry = registry;
+        Gauge.builder("gateway.rate-limit.buckets", buckets, Cache::estimatedSize)
+                .description("Rate-limit buckets currently kept in memory")
+                .register(registry);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    GatewayRateLimitProperties.KeyResolver getKeyResolver() {
+        return keyResolver;
+    }
+
+    /** Whether usernames on requests from {@code address} were set by an authenticating proxy and can be keyed on. */
+    boolean isTrustedProxy(String address) {
+        return trustedProxies.contains(address);
+    }
+
+    /** Limit applied to the route, or {@code null} when the route is not limited. */
+    Limit limit(String routeId) {
+        if (!enabled) {
+            return null;
+        }
+        Limit limit = routeLimits.getOrDefault(routeId, defaultLimit);
+        return limit != Limit.NONE ? limit : null;
+    }
+
+    /** Takes one token from the caller's bucket for the route. */
+    Decision tryAcquire(String routeId, Limit limit, String subject) {
+        AtomicLong bucket = buckets.get(new Key(routeId, subject), key -> new AtomicLong(clock.getAsLong()));
+        long now = clock.getAsLong();
+        while (true) {
+            long arrival = bucket.get();
+            long next = (arrival - now > 0 ? arrival : now) + limit.intervalNanos;
+            long ahead = next - now;
+            if (ahead > limit.toleranceNanos) {
+                rejected.computeIfAbsent(routeId, id -> Counter.builder("gateway.rate-limit.rejected")
+                        .description("Requests refused by the local rate limiter")
+                        .tag("route", id)
+                        .register(registry)).increment();
+                return new Decision(false, 0, ahead - limit.toleranceNanos);
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return new Decision(true, (limit.toleranceNanos - ahead) / limit.intervalNanos, 0);
+            }
+        }
+    }
+
+    long size() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+
+    private record Key(String routeId, String subject) {
+    }
+
+    record Limit(int replenishRate, int burstCapacity, long intervalNanos, long toleranceNanos) {
+
+        static final Limit NONE = new Limit(0, 0, 0, 0);
+
+        static Limit of(int replenishRate, int burstCapacity) {
+            int rate = Math.max(1, replenishRate);
+            int burst = Math.max(1, burstCapacity);
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            return new Limit(rate, burst, interval, interval * burst);
+        }
+    }
+
+    /** Outcome of one acquisition: tokens left afterwards, or how long until the next token when refused. */
+    record Decision(boolean allowed, long remaining, long retryAfterNanos) {
+    }
+}
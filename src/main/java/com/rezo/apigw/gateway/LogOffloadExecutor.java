@@ -0,0 +1,165 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves the expensive part of access logging (body masking, formatting, handing lines to {@link AccessLogWriter})
+ * from the Netty event loop to virtual threads when {@code gateway.logging.offload.enabled=true}.
+ * <p>
+ * {@link LoggingGlobalFilter} submits its work through one {@link #lane()} per exchange. A lane runs its tasks one at a
+ * time in submission order, so the lines of an exchange keep their order and its record is only sealed after its
+ * bodies are attached. Different exchanges run in parallel on at most {@code max-concurrency} virtual threads. At most
+ * {@code queue-size} lanes wait for one; past that the submitting thread runs the work itself, slowing the event loop
+ * down instead of letting the backlog, and the bodies it holds, grow without bound. When disabled (or stopped), lanes
+ * run every task inline, as before.
+ */
+@Component
+public class LogOffloadExecutor implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(LogOffloadExecutor.class);
+
+    private static final Executor INLINE = Runnable::run;
+
+    private final GatewayLoggingProperties.Offload config;
+    private final Semaphore permits;
+    private final int maxPending;
+    /** Lanes handed to the executor, waiting for a permit or running. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter callerRuns;
+    private final Timer queueWait;
+    private volatile ExecutorService executor;
+
+    public LogOffloadExecutor(GatewayLoggingProperties props, MeterRegistry meterRegistry) {
+        this.config = props.getOffload();
+        int concurrency = Math.max(1, config.getMaxConcurrency());
+        this.permits = new Semaphore(concurrency);
+        this.maxPending = concurrency + Math.max(0, config.getQueueSize());
+        this.callerRuns = Counter.builder("gateway.logging.offload.caller-runs")
+                .description("Logging work done on the event loop because the offload queue was full")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("gateway.logging.offload.queue.wait")
+                .description("Time logging work waited for a virtual thread")
+                .register(meterRegistry);
+        Gauge.builder("gateway.logging.offload.queue.size", this, LogOffloadExecutor::queued)
+                .description("Exchanges whose logging work waits for a virtual thread")
+                .register(meterRegistry);
+        Gauge.builder("gateway.logging.offload.active", active, AtomicInteger::get)
+                .description("Virtual threads doing logging work")
+                .register(meterRegistry);
+    }
+
+    /** A serial executor for the logging work of one exchange; inline while offloading is off. */
+    Executor lane() {
+        return executor != null ? new Lane() : INLINE;
+    }
+
+    int queued() {
+        return Math.max(0, pending.get() - active.get());
+    }
+
+    private void dispatch(Runnable drain) {
+        ExecutorService executor = this.executor;
+        if (executor != null) {
+            if (pending.incrementAndGet() <= maxPending) {
+                long queuedAt = System.nanoTime();
+                try {
+                    executor.execute(() -> run(drain, queuedAt));
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // stopping: fall through and run it here
+                }
+            }
+            pending.decrementAndGet();
+            callerRuns.increment();
+        }
+        drain.run();
+    }
+
+    private void run(Runnable drain, long queuedAt) {
+        permits.acquireUninterruptibly();
+        active.incrementAndGet();
+        queueWait.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        try {
+            drain.run();
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+            pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (config.isEnabled() && executor == null) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("log-offload-", 0).factory());
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        ExecutorService executor = this.executor;
+        if (executor != null) {
+            // new work runs inline from here on; close() waits for what was already handed over
+            this.executor = null;
+            executor.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    @Override
+    public int getPhase() {
+        // stop after the web server and before the access-log writer the queued work still writes to
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+
+    /** Runs its tasks one after the other, on whichever thread the current drain happens on. */
+    private final class Lane implements Executor {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.offer(task);
+            if (wip.getAndIncrement() == 0) {
+                dispatch(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                for (Runnable task; (task = tasks.poll()) != null; ) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.warn("Offloaded access-log task failed: {}", e.toString());
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-exchange body sampling decisions for {@link LoggingGlobalFilter}.
+ * <p>
+ * The decision is taken once when the exchange enters the filter, so unsampled exchanges never allocate a capture
+ * buffer. In {@code ADAPTIVE} mode the route rate is scaled by {@code maxInFlight / inFlight} and
+ * {@code maxEventLoopLag / lag} whenever either signal is over its threshold, floored at {@code minRate}.
+ */
+@Component
+public class LogSampler {
+
+    private final GatewayLoggingProperties.Sampling config;
+    private final EventLoopLagMonitor lagMonitor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final long slowThresholdNanos;
+    private final long maxLagNanos;
+
+    public LogSampler(GatewayLoggingProperties props, EventLoopLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.config = props.getSampling();
+        this.lagMonitor = lagMonitor;
+        this.slowThresholdNanos = config.getSlowThreshold().toNanos();
+        this.maxLagNanos = Math.max(1, config.getMaxEventLoopLag().toNanos());
+        Gauge.builder("gateway.logging.inflight", inFlight, AtomicInteger::get)
+                .description("Exchanges currently inside the logging filter")
+                .register(meterRegistry);
+        Gauge.builder("gateway.logging.sampling.rate", this, sampler -> sampler.effectiveRate(config.getRate()))
+                .description("Effective body sampling rate for the global policy")
+                .register(meterRegistry);
+    }
+
+    /** Mark an exchange as started; must be paired with {@link #exit()}. */
+    void enter() {
+        inFlight.incrementAndGet();
+    }
+
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    /** Whether the bodies of a new exchange on a route with the given policy are captured. */
+    boolean sample(LoggingPolicy policy) {
+        double rate = effectiveRate(policy.getSamplingRate());
+        return rate >= 1d || (rate > 0d && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /** For an unsampled exchange, whether its response body should be captured anyway. */
+    boolean promote(HttpStatusCode status, long elapsedNanos) {
+        if (config.getMode() != GatewayLoggingProperties.SamplingMode.ERRORS_AND_SLOW) {
+            return false;
+        }
+        return (status != null && !status.is2xxSuccessful()) || elapsedNanos >= slowThresholdNanos;
+    }
+
+    double effectiveRate(double baseRate) {
+        if (config.getMode() != GatewayLoggingProperties.SamplingMode.ADAPTIVE || baseRate <= 0d) {
+            return baseRate;
+        }
+        double factor = 1d;
+        int current = inFlight.get();
+        if (current > config.getMaxInFlight()) {
+            factor *= (double) config.getMaxInFlight() / current;
+        }
+        long lag = lagMonitor.maxLagNanos();
+        if (lag > maxLagNanos) {
+            factor *= (double) maxLagNanos / lag;
+        }
+        return factor >= 1d ? baseRate : Math.max(Math.min(baseRate, config.getMinRate()), baseRate * factor);
+    }
+}
@@ -2,13 +2,12 @@ package com.rezo.apigw.gateway;
 
 import com.rezo.apigw.config.GatewayLoggingProperties;
 import lombok.RequiredArgsConstructor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
@@ -17,31 +16,44 @@ import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.ErrorResponse;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import java.util.Base64;
+import com.fasterxml.jackson.core.JsonFactory;
 
 @Component
 @RequiredArgsConstructor
 public class LoggingGlobalFilter implements GlobalFilter, Ordered {
 
-    private static final Logger accessLog = LoggerFactory.getLogger(LoggingGlobalFilter.class);
+    /** Logged in place of a request body that nothing downstream read, so it is not mistaken for an empty one. */
+    static final String BODY_NOT_READ = "[not read]";
+    /** Logged in place of a request body whose reading stopped before its end. */
+    static final String BODY_NOT_READ_IN_FULL = "[not read in full]";
 
     private final GatewayLoggingProperties props;
+    private final AccessLogWriter accessLog;
+    private final LoggingPolicies policies;
+    private final JwtUsernameResolver jwtUsernameResolver;
+    private final LogSampler sampler;
+    private final LogOffloadExecutor offload;
+    private final CaptureBufferPool capturePool;
+    private final JsonFieldMasker jsonFieldMasker = new JsonFieldMasker(new JsonFactory());
+    private final MultipartMasker multipartMasker = new MultipartMasker();
 
     @Override
     public int getOrder() {
@@ -51,130 +63,223 @@ public class LoggingGlobalFilter implements GlobalFilter, Ordered {
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, org.springframework.cloud.gateway.filter.GatewayFilterChain chain) {
-        if (!props.isEnabled()) {
+        LoggingPolicy policy = policies.resolve(exchange);
+        if (!policy.isEnabled()) {
             return chain.filter(exchange);
         }
 
-        Instant start = Instant.now();
+        // usually started by ExchangeMetricsFilter; monotonic, so latencies are immune to wall-clock adjustments
+        ExchangeTimings timings = ExchangeTimings.start(exchange);
         ServerHttpRequest request = exchange.getRequest();
 
         String correlationId = getOrCreateCorrelationId(request.getHeaders());
-        // Extract username for logging (from Basic or Bearer JWT)
-        String username = extractUsername(request);
+        // Extract username for logging (from Basic or Bearer JWT), unless the rate limiter already did
+        String username = Usernames.of(exchange, jwtUsernameResolver);
         ServerWebExchange mutatedExchange = exchange.mutate()
                 .request(builder -> builder.header("X-Correlation-Id", correlationId))
                 .build();
-        // store username in exchange attributes for later logs
-        mutatedExchange.getAttributes().put("log.username", username);
+
+        // Decide once per exchange whether bodies are captured; unsampled exchanges skip body buffering entirely
+        boolean sampled = sampler.sample(policy);
+        sampler.enter();
+
+        // Structured formats (and consolidated text) collect the whole exchange into one record, emitted exactly once
+        // when the exchange ends, instead of logging separate lines as they go
+        AccessLogRecord record = props.getFormat() != GatewayLoggingProperties.AccessLogFormat.TEXT || props.isConsolidated()
+                ? newRecord(exchange, timings, correlationId, username) : null;
+        // Masking, formatting and log emission for this exchange, in order; off the event loop when offloading is on
+        Executor logLane = offload.lane();
+        // Body captures of this exchange, all released once it ends whatever happened to them on the way
+        CaptureBufferPool.Scope captures = capturePool.scope();
+        // What to log instead of a request body that is due but was not read by the time the exchange ends
+        AtomicReference<String> unreadBody = new AtomicReference<>();
 
         // Capture and possibly log request headers and body
-        return decorateRequest(mutatedExchange, correlationId)
-                .flatMap(decoratedExchange -> decorateResponse(decoratedExchange, start, correlationId))
+        return decorateRequest(mutatedExchange, policy, sampled, correlationId, record, logLane, captures, unreadBody)
+                .flatMap(decoratedExchange -> decorateResponse(decoratedExchange, policy, sampled, timings, correlationId,
+                        record, logLane, captures))
                 .flatMap(chain::filter)
-                .then(Mono.fromRunnable(() -> {
-                    // ensure end log when response done if not logged (handled in response decorator)
-                }));
+                .doOnError(e -> {
+                    if (record != null) {
+                        record.error = e.toString();
+                        // what the error handler will answer with, unless a status was already sent
+                        record.status = errorStatus(e);
+                    }
+                })
+                .doFinally(signal -> {
+                    sampler.exit();
+                    String unread = unreadBody.get();
+                    if (record != null) {
+                        // also covers exchanges whose response is never written (setComplete(), errors, cancellation)
+                        logRecord(record, policy, signal, timings, mutatedExchange, logLane, unread);
+                    } else if (unread != null) {
+                        String uname = safeUsername(mutatedExchange.getAttribute(Usernames.ATTR));
+                        logLane.execute(() -> accessLog.log("[{}][user={}] -> BODY: {}", correlationId, uname, unread));
+                    }
+                    // after the lane tasks still masking them
+                    logLane.execute(captures::releaseAll);
+                });
     }
 
-    private Mono<ServerWebExchange> decorateRequest(ServerWebExchange exchange, String correlationId) {
+    private AccessLogRecord newRecord(ServerWebExchange exchange, ExchangeTimings timings, String correlationId,
+                                      String username) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        AccessLogRecord record = accessLog.newRecord();
+        record.timestamp = timings.startEpochMillis;
+        record.correlationId = correlationId;
+        record.user = username == null || username.isBlank() ? null : username;
+        record.routeId = route != null ? route.getId() : null;
+        record.method = request.getMethod().name();
+        record.path = request.getURI().getRawPath();
+        record.query = request.getURI().getRawQuery();
+        record.requestBytes = request.getHeaders().getContentLength();
+        return record;
+    }
+
+    private Mono<ServerWebExchange> decorateRequest(ServerWebExchange exchange, LoggingPolicy policy, boolean sampled,
+                                                    String correlationId, AccessLogRecord record, Executor logLane,
+                                                    CaptureBufferPool.Scope captures, AtomicReference<String> unreadBody) {
         ServerHttpRequest request = exchange.getRequest();
         HttpHeaders headers = request.getHeaders();
         String method = request.getMethod() != null ? request.getMethod().name() : "UNKNOWN";
         URI uri = request.getURI();
 
         // Resolve username saved earlier
-        String username = safeUsername(exchange.getAttribute("log.username"));
+        String username = safeUsername(exchange.getAttribute(Usernames.ATTR));
+        int generation = record != null ? record.generation() : 0;
         // Log headers
-        if (props.isLogHeaders()) {
-            String maskedHeaders = maskHeaders(headers);
-            accessLog.info("[{}][user={}] -> {} {}{} Headers: {}", correlationId, username, method, uri.getPath(),
-                    uri.getQuery() != null ? ("?" + uri.getQuery()) : "", toSingleLine(maskedHeaders));
+        if (record != null) {
+            if (policy.isLogHeaders()) {
+                record.requestHeaders = AccessLogRecord.snapshot(headers, policy.getMaskingRules());
+            }
+        } else if (policy.isLogHeaders()) {
+            // request headers are read-only, so they can be masked later on the lane
+            logLane.execute(() -> accessLog.log("[{}][user={}] -> {} {}{} Headers: {}", correlationId, username, method,
+                    uri.getPath(), uri.getQuery() != null ? ("?" + uri.getQuery()) : "",
+                    toSingleLine(maskHeaders(headers, policy.getMaskingRules()))));
         } else {
-            accessLog.info("[{}][user={}] -> {} {}{}", correlationId, username, method, uri.getPath(),
-                    uri.getQuery() != null ? ("?" + uri.getQuery()) : "");
+            logLane.execute(() -> accessLog.log("[{}][user={}] -> {} {}{}", correlationId, username, method,
+                    uri.getPath(), uri.getQuery() != null ? ("?" + uri.getQuery()) : ""));
         }
 
-        if (!props.isLogRequestBody()) {
+        if (!sampled || !policy.isLogRequestBody()) {
             return Mono.just(exchange);
         }
 
-        boolean loggableContentType = isLoggableContentType(headers.getContentType());
-        if (!loggableContentType) {
+        MediaType contentType = headers.getContentType();
+        LoggingPolicy.BodyFormat format = policy.bodyFormat(contentType);
+        if (format == null) {
             return Mono.just(exchange);
         }
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING)) {
+            // answered before anything read it (429, fast-fail, cache hit...): say so rather than log no body
+            unreadBody.set(BODY_NOT_READ);
+        }
 
-        // Buffer the request body for logging and forwarding
-        AtomicReference<byte[]> cachedBodyRef = new AtomicReference<>(new byte[0]);
-
-        return DataBufferUtils.join(request.getBody())
-                .defaultIfEmpty(exchange.getResponse().bufferFactory().wrap(new byte[0]))
-                .map(dataBuffer -> {
-                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                    dataBuffer.read(bytes);
-                    DataBufferUtils.release(dataBuffer);
-                    int max = Math.min(bytes.length, props.getMaxBodySize());
-                    byte[] limited = Arrays.copyOf(bytes, max);
-                    cachedBodyRef.set(limited);
-                    String bodyStr = new String(limited, StandardCharsets.UTF_8);
-                    String maskedBody = maybeMaskBody(headers.getContentType(), bodyStr);
-                    String uname = safeUsername(exchange.getAttribute("log.username"));
-                    accessLog.info("[{}][user={}] -> BODY: {}", correlationId, uname, toSingleLine(maskedBody));
-                    return limited;
-                })
-                .map(bytes -> new ServerHttpRequestDecorator(request) {
-                    @Override
-                    public Flux<DataBuffer> getBody() {
-                        DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
-                        return Flux.defer(() -> {
-                            DataBuffer buffer = bufferFactory.wrap(cachedBodyRef.get());
-                            return Flux.just(buffer);
-                        });
-                    }
-                })
-                .map(decoratedRequest -> exchange.mutate().request(decoratedRequest).build());
+        // Tee the request body: the original buffers stream to the upstream untouched while a bounded
+        // side buffer keeps at most maxBodySize bytes for the log line, released right after logging
+        ServerHttpRequestDecorator decoratedRequest = new ServerHttpRequestDecorator(request) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return Flux.defer(() -> {
+                    BodyCapture capture = captures.capture(policy.getMaxBodySize(), headers.getContentLength());
+                    unreadBody.compareAndSet(BODY_NOT_READ, BODY_NOT_READ_IN_FULL);
+                    return super.getBody()
+                            .doOnNext(capture::append)
+                            .doOnComplete(() -> {
+                                unreadBody.set(null);
+                                String uname = safeUsername(exchange.getAttribute(Usernames.ATTR));
+                                // the capture is released by the lane task once it has been masked
+                                logLane.execute(() -> {
+                                    try {
+                                        String maskedBody = maskCaptured(format, contentType, contentEncoding, capture, policy);
+                                        if (record != null) {
+                                            record.attachRequestBody(generation, maskedBody, capture.totalBytes());
+                                            return;
+                                        }
+                                        accessLog.log("[{}][user={}] -> BODY: {}", correlationId, uname, toSingleLine(maskedBody));
+                                    } finally {
+                                        capture.release();
+                                    }
+                                });
+                            })
+                            .doFinally(signal -> {
+                                if (signal != SignalType.ON_COMPLETE) {
+                                    capture.release();
+                                }
+                            });
+                });
+            }
+        };
+        return Mono.just(exchange.mutate().request(decoratedRequest).build());
     }
 
-    private Mono<ServerWebExchange> decorateResponse(ServerWebExchange exchange, Instant start, String correlationId) {
+    private Mono<ServerWebExchange> decorateResponse(ServerWebExchange exchange, LoggingPolicy policy, boolean sampled,
+                                                     ExchangeTimings timings, String correlationId, AccessLogRecord record,
+                                                     Executor logLane, CaptureBufferPool.Scope captures) {
         ServerHttpResponse originalResponse = exchange.getResponse();
+        int generation = record != null ? record.generation() : 0;
         ServerHttpResponseDecorator decorated = new ServerHttpResponseDecorator(originalResponse) {
             @Override
             public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
                 MediaType contentType = getHeaders().getContentType();
-                boolean logBody = props.isLogResponseBody() && isLoggableContentType(contentType);
-                if (logBody) {
-                    Flux<? extends DataBuffer> flux = Flux.from(body);
-                    return super.writeWith(
-                            flux.map(dataBuffer -> {
-                                byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                                dataBuffer.read(bytes);
-                                String bodyString = new String(bytes, StandardCharsets.UTF_8);
-                                String masked = maybeMaskBody(contentType, bodyString);
-                                Duration latency = Duration.between(start, Instant.now());
+                // as sent by the upstream: compression by the gateway itself happens after this tap
+                String contentEncoding = getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+                boolean captureBody = sampled || sampler.promote(getStatusCode(), timings.elapsedNanos());
+                LoggingPolicy.BodyFormat format = captureBody && policy.isLogResponseBody() ? policy.bodyFormat(contentType) : null;
+                if (format != null) {
+                    // Tap the response: original buffers pass through to the client as-is, at most maxBodySize
+                    // bytes are copied aside across chunks and a single line is logged once the write completes
+                    BodyCapture capture = captures.capture(policy.getMaxBodySize(), getHeaders().getContentLength());
+                    return super.writeWith(Flux.from(body).doOnNext(capture::append))
+                            .doOnSuccess(done -> {
+                                // everything that depends on when or where it runs is read here, the rest on the lane
+                                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(timings.elapsedNanos());
                                 HttpStatusCode status = getStatusCode();
-                                String uname = safeUsername(exchange.getAttribute("log.username"));
-                                if (props.isLogHeaders()) {
-                                    accessLog.info("[{}][user={}] <- {} {} ms Headers: {} BODY: {}", correlationId, uname,
-                                            status != null ? status.value() : 0,
-                                            latency.toMillis(), toSingleLine(maskHeaders(getHeaders())), toSingleLine(masked));
-                                } else {
-                                    accessLog.info("[{}][user={}] <- {} {} ms BODY: {}", correlationId, uname,
-                                            status != null ? status.value() : 0, latency.toMillis(), toSingleLine(masked));
-                                }
-                                return bufferFactory().wrap(bytes);
+                                String uname = safeUsername(exchange.getAttribute(Usernames.ATTR));
+                                String maskedHeaders = record == null && policy.isLogHeaders()
+                                        ? maskHeaders(getHeaders(), policy.getMaskingRules()) : null;
+                                logLane.execute(() -> {
+                                    try {
+                                        String masked = maskCaptured(format, contentType, contentEncoding, capture, policy);
+                                        if (record != null) {
+                                            record.attachResponseBody(generation, masked, capture.totalBytes());
+                                        } else if (maskedHeaders != null) {
+                                            accessLog.log("[{}][user={}] <- {} {} ms Headers: {} BODY: {}", correlationId, uname,
+                                                    status != null ? status.value() : 0,
+                                                    latencyMillis, toSingleLine(maskedHeaders), toSingleLine(masked));
+                                        } else {
+                                            accessLog.log("[{}][user={}] <- {} {} ms BODY: {}", correlationId, uname,
+                                                    status != null ? status.value() : 0, latencyMillis, toSingleLine(masked));
+                                        }
+                                    } finally {
+                                        capture.release();
+                                    }
+                                });
                             })
-                    );
+                            .doFinally(signal -> {
+                                if (signal != SignalType.ON_COMPLETE) {
+                                    capture.release();
+                                }
+                            });
                 }
                 // Fallback: no body or not loggable content type
-                Duration latency = Duration.between(start, Instant.now());
+                if (record != null) {
+                    return super.writeWith(body);
+                }
+                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(timings.elapsedNanos());
                 HttpStatusCode status = getStatusCode();
-                String uname = safeUsername(exchange.getAttribute("log.username"));
-                if (props.isLogHeaders()) {
-                    accessLog.info("[{}][user={}] <- {} {} ms Headers: {}", correlationId, uname,
-                            status != null ? status.value() : 0,
-                            latency.toMillis(), toSingleLine(maskHeaders(getHeaders())));
+                String uname = safeUsername(exchange.getAttribute(Usernames.ATTR));
+                if (policy.isLogHeaders()) {
+                    // still mutable until written: mask them now
+                    String maskedHeaders = maskHeaders(getHeaders(), policy.getMaskingRules());
+                    logLane.execute(() -> accessLog.log("[{}][user={}] <- {} {} ms Headers: {}", correlationId, uname,
+                            status != null ? status.value() : 0, latencyMillis, toSingleLine(maskedHeaders)));
                 } else {
-                    accessLog.info("[{}][user={}] <- {} {} ms", correlationId, uname,
-                            status != null ? status.value() : 0, latency.toMillis());
+                    logLane.execute(() -> accessLog.log("[{}][user={}] <- {} {} ms", correlationId, uname,
+                            status != null ? status.value() : 0, latencyMillis));
                 }
                 return super.writeWith(body);
             }
@@ -182,161 +287,126 @@ public class LoggingGlobalFilter implements GlobalFilter, Ordered {
         return Mono.just(exchange.mutate().response(decorated).build());
     }
 
-    private boolean isLoggableContentType(MediaType mediaType) {
-        if (mediaType == null) return true; // treat unknown as loggable (e.g., most JSON defaults)
-        String mt = mediaType.toString().toLowerCase(Locale.ROOT);
-        return props.getContentTypeIncludes().stream().anyMatch(mt::contains);
-    }
-
-    private String maskHeaders(HttpHeaders headers) {
-        Map<String, List<String>> masked = new LinkedHashMap<>();
-        headers.forEach((k, v) -> {
-            String keyLower = k.toLowerCase(Locale.ROOT);
-            if (props.getMaskedHeaders().contains(keyLower)) {
-                masked.put(k, Collections.singletonList("****"));
-            } else {
-                masked.put(k, v);
+    private void logRecord(AccessLogRecord record, LoggingPolicy policy, SignalType signal, ExchangeTimings timings,
+                           ServerWebExchange exchange, Executor logLane, String unreadBody) {
+        ServerHttpResponse response = exchange.getResponse();
+        ResponseCache.Result cacheResult = exchange.getAttribute(ResponseCacheFilter.CACHE_RESULT_ATTR);
+        record.cache = cacheResult != null ? cacheResult.name() : null;
+        HttpStatusCode status = response.getStatusCode();
+        HttpHeaders responseHeaders = response.getHeaders();
+        if (status != null) {
+            record.status = status.value();
+        } else if (signal == SignalType.CANCEL) {
+            record.status = AccessLogRecord.NO_STATUS;
+        } else if (signal != SignalType.ON_ERROR) {
+            // committed with the server's default
+            record.status = HttpStatus.OK.value();
+        }
+        record.latencyMillis = TimeUnit.NANOSECONDS.toMillis(timings.elapsedNanos());
+        record.requestBodyNanos = timings.requestBodyNanos();
+        record.upstreamConnectNanos = timings.upstreamConnectNanos();
+        record.upstreamWaitNanos = timings.upstreamWaitNanos();
+        record.responseWriteNanos = timings.responseWriteNanos();
+        record.outcome = switch (signal) {
+            case CANCEL -> "cancel";
+            case ON_ERROR -> "error";
+            default -> "complete";
+        };
+        if (policy.isLogHeaders()) {
+            record.responseHeaders = AccessLogRecord.snapshot(responseHeaders, policy.getMaskingRules());
+        }
+        long contentLength = responseHeaders.getContentLength();
+        // queued behind the body captures of this exchange, which may still be masking on the lane
+        logLane.execute(() -> {
+            // late body captures (e.g. after a cancel) are dropped from here on
+            record.seal();
+            if (unreadBody != null && record.requestBody == null) {
+                record.requestBody = unreadBody;
             }
+            if (record.responseBytes < 0) {
+                record.responseBytes = contentLength;
+            }
+            accessLog.log(record);
         });
-        return masked.toString();
     }
 
-    private String maybeMaskBody(MediaType contentType, String body) {
-        if (contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(contentType)) {
-            return maskJsonFields(body, props.getMaskedJsonFields());
-        }
-        // basic masking for form fields in x-www-form-urlencoded
-        if (contentType != null && MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(contentType)) {
-            return maskFormFields(body, props.getMaskedFormFields());
+    /** The status the error handler sends for {@code error}, determined as {@code DefaultErrorAttributes} does. */
+    static int errorStatus(Throwable error) {
+        if (error instanceof ErrorResponse response) {
+            return response.getStatusCode().value();
         }
-        // multipart/form-data masking (text fields only)
-        if (contentType != null && MediaType.MULTIPART_FORM_DATA.isCompatibleWith(contentType)) {
-            return maskMultipartForm(body, contentType, props.getMaskedFormFields());
-        }
-        return body;
+        ResponseStatus annotated = AnnotatedElementUtils.findMergedAnnotation(error.getClass(), ResponseStatus.class);
+        return annotated != null ? annotated.code().value() : HttpStatus.INTERNAL_SERVER_ERROR.value();
     }
 
-    private String maskJsonFields(String json, List<String> fields) {
-        String masked = json;
-        for (String field : fields) {
-            // regex to replace "field":"value" or 'field':'value'
-            String pattern = "\\\"" + Pattern.quote(field) + "\\\"\\s*:\\s*\\\"(.*?)\\\"";
-            masked = masked.replaceAll(pattern, "\"" + field + "\":\"****\"");
+    // Compressed bodies pass through untouched; only the bounded capture is inflated, and only here, for the log
+    private String maskCaptured(LoggingPolicy.BodyFormat format, MediaType contentType, String contentEncoding,
+                                BodyCapture capture, LoggingPolicy policy) {
+        if (!ContentDecoding.isEncoded(contentEncoding)) {
+            return maybeMaskBody(format, contentType, capture.content(), policy);
         }
-        return masked;
-    }
-
-    private String maskFormFields(String form, List<String> fields) {
-        String masked = form;
-        for (String field : fields) {
-            String pattern = "(?i)(^|&)(" + Pattern.quote(field) + ")=([^&]*)";
-            masked = masked.replaceAll(pattern, "$1$2=****");
+        byte[] decoded = ContentDecoding.decode(capture.content(), contentEncoding, policy.getMaxBodySize());
+        if (decoded == null) {
+            return "[" + contentEncoding + "-encoded body, " + capture.totalBytes() + " bytes]";
         }
-        return masked;
+        return maybeMaskBody(format, contentType, DefaultDataBufferFactory.sharedInstance.wrap(decoded), policy);
     }
 
-    // Basic, tolerant masking for multipart/form-data bodies. We do not parse fully,
-    // just split by boundary and replace part bodies whose name matches a configured field.
-    private String maskMultipartForm(String raw, MediaType contentType, List<String> fields) {
-        if (raw == null || raw.isEmpty()) return raw;
-        String boundary = null;
-        try {
-            Map<String, String> params = contentType.getParameters();
-            if (params != null) {
-                boundary = params.get("boundary");
-            }
-        } catch (Exception ignored) {}
-        if (boundary == null || boundary.isEmpty()) {
-            // No boundary info; avoid risky logging changes
-            return raw;
-        }
-        String delimiter = "--" + boundary;
-        String closeDelimiter = delimiter + "--";
-        // Normalize to \n processing but preserve original lines when reconstructing
-        String[] parts = raw.split("(?s)" + Pattern.quote(delimiter));
-        StringBuilder out = new StringBuilder();
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i];
-            if (part.isEmpty()) {
-                // the text before the first delimiter
-                out.append(part);
-                continue;
-            }
-            // Append delimiter back (except possibly for the very beginning)
-            out.append(delimiter);
-            // If this is the closing delimiter part, keep as is
-            if (part.startsWith("--")) {
-                out.append(part);
-                continue;
+    // The package-private helpers below are also driven directly by the JMH benchmarks (mvn -Pbench)
+    // Same "{name=[v1, v2], ...}" shape as Map.toString(), written straight into one builder
+    String maskHeaders(HttpHeaders headers, MaskingRules rules) {
+        StringBuilder out = new StringBuilder(256).append('{');
+        headers.forEach((name, values) -> {
+            if (out.length() > 1) {
+                out.append(", ");
             }
-            // Try to locate header/body separator (\r\n\r\n or \n\n)
-            int idx = indexOfDoubleNewline(part);
-            if (idx < 0) {
-                out.append(part); // unknown structure
-                continue;
-            }
-            String headers = part.substring(0, idx);
-            String body = part.substring(idx);
-            String name = extractMultipartName(headers);
-            if (name != null && matchesAnyIgnoreCase(name, fields)) {
-                // Replace body content, but preserve leading CRLFs
-                String leading = leadingNewlines(body);
-                out.append(headers).append(leading).append("****");
-                // If original had trailing CRLF before next boundary, try to preserve by ensuring newline end
-                if (!body.endsWith("\r\n") && !body.endsWith("\n")) {
-                    // leave as is
-                }
+            out.append(name).append('=');
+            if (rules.isMaskedHeader(name)) {
+                out.append('[').append(MaskingRules.MASK).append(']');
             } else {
-                out.append(headers).append(body);
+                out.append(values);
+            }
+        });
+        return out.append('}').toString();
+    }
+
+    String maybeMaskBody(LoggingPolicy.BodyFormat format, MediaType contentType, DataBuffer body, LoggingPolicy policy) {
+        if (format == LoggingPolicy.BodyFormat.JSON
+                && props.getJsonMaskingMode() == GatewayLoggingProperties.JsonMaskingMode.STREAMING) {
+            try {
+                return jsonFieldMasker.mask(body, policy.getMaskingRules().jsonFields());
+            } catch (IOException e) {
+                // not well-formed (or truncated at maxBodySize): fall through to the tolerant regex masker
             }
         }
-        // Ensure closing delimiter exists if it was present originally (kept by split rebuild)
-        String result = out.toString();
-        // Append close delimiter if raw ended with it but reconstruction missed it (unlikely)
-        if (raw.contains(closeDelimiter) && !result.contains(closeDelimiter)) {
-            if (!result.endsWith("\r\n") && !result.endsWith("\n")) result += "\r\n";
-            result += closeDelimiter;
+        if (format == LoggingPolicy.BodyFormat.MULTIPART) {
+            return maskMultipartForm(body, contentType, policy.getMaskingRules());
         }
-        return result;
+        String text = body.toString(StandardCharsets.UTF_8);
+        return switch (format) {
+            case JSON -> maskJsonFields(text, policy.getMaskingRules());
+            case FORM -> maskFormFields(text, policy.getMaskingRules());
+            case MULTIPART, TEXT -> text;
+        };
     }
 
-    private int indexOfDoubleNewline(String s) {
-        int idx = s.indexOf("\r\n\r\n");
-        if (idx >= 0) return idx + 4; // position after separator
-        idx = s.indexOf("\n\n");
-        if (idx >= 0) return idx + 2;
-        return -1;
+    String maskJsonFields(String json, MaskingRules rules) {
+        return rules.maskJsonStringValues(json);
     }
 
-    private String leadingNewlines(String s) {
-        int i = 0;
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (c == '\r' || c == '\n') i++; else break;
-        }
-        return s.substring(0, i);
+    // basic masking for form fields in x-www-form-urlencoded
+    String maskFormFields(String form, MaskingRules rules) {
+        return rules.maskFormValues(form);
     }
 
-    private String extractMultipartName(String headersSection) {
-        // Look for Content-Disposition: form-data; name="field"; filename="..."
-        String[] lines = headersSection.split("\r?\n");
-        for (String line : lines) {
-            String lower = line.toLowerCase(Locale.ROOT);
-            if (lower.startsWith("content-disposition:")) {
-                Matcher m = Pattern.compile(";\\s*name=\"(.*?)\"").matcher(line);
-                if (m.find()) {
-                    return m.group(1);
-                }
-            }
-        }
-        return null;
-    }
-
-    private boolean matchesAnyIgnoreCase(String val, List<String> fields) {
-        for (String f : fields) {
-            if (f != null && val != null && f.equalsIgnoreCase(val)) return true;
+    String maskMultipartForm(DataBuffer body, MediaType contentType, MaskingRules rules) {
+        String boundary = contentType != null ? contentType.getParameter("boundary") : null;
+        if (boundary != null && boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
         }
-        return false;
+        String masked = boundary != null && !boundary.isEmpty() ? multipartMasker.mask(body, boundary, rules.formFields()) : null;
+        // no (matching) boundary: log the body as-is rather than guess at its structure
+        return masked != null ? masked : body.toString(StandardCharsets.UTF_8);
     }
 
     private String getOrCreateCorrelationId(HttpHeaders headers) {
@@ -346,16 +416,8 @@ public class LoggingGlobalFilter implements GlobalFilter, Ordered {
 
     // Normalize any text to a single line for access.log: replace newlines/tabs/control chars with space,
     // collapse multiple spaces, and trim
-    private String toSingleLine(String s) {
-        if (s == null) return "";
-        String normalized = s
-                .replace('\r', ' ')
-                .replace('\n', ' ')
-                .replace('\t', ' ');
-        // Remove other control characters, collapse spaces and trim
-        normalized = normalized.replaceAll("\\p{Cntrl}", " ");
-        normalized = normalized.replaceAll(" +", " ");
-        return normalized.trim();
+    String toSingleLine(String s) {
+        return SingleLine.of(s);
     }
 
     // === Username extraction helpers ===
@@ -365,86 +427,7 @@ public class LoggingGlobalFilter implements GlobalFilter, Ordered {
         return toSingleLine(s);
     }
 
-    private String extractUsername(ServerHttpRequest request) {
-        HttpHeaders headers = request.getHeaders();
-        String auth = headers.getFirst(HttpHeaders.AUTHORIZATION);
-        String path = request.getURI() != null ? request.getURI().getPath() : "";
-
-        // 1) If login request and Basic auth available -> decode username from Basic
-        if (path != null && path.toLowerCase(Locale.ROOT).contains("/login") && auth != null && auth.toLowerCase(Locale.ROOT).startsWith("basic ")) {
-            String fromBasic = extractFromBasic(auth);
-            if (fromBasic != null) return fromBasic;
-        }
-
-        // 2) Try explicit username headers often used by upstreams/proxies
-        String explicit = firstNonBlank(
-                headers.getFirst("X-Username"),
-                headers.getFirst("X-User"),
-                headers.getFirst("X-Auth-User"),
-                headers.getFirst("Username"),
-                headers.getFirst("User")
-        );
-        if (explicit != null && !explicit.isBlank()) return explicit;
-
-        // 3) Bearer JWT -> parse payload and read preferred claim keys
-        if (auth != null && auth.toLowerCase(Locale.ROOT).startsWith("bearer ")) {
-            String fromJwt = extractFromBearer(auth);
-            if (fromJwt != null) return fromJwt;
-        }
-
-        // 4) Nothing found
-        return "";
-    }
-
-    private String extractFromBasic(String authorization) {
-        try {
-            String token = authorization.substring(6).trim(); // after 'Basic '
-            byte[] decoded = Base64.getDecoder().decode(token);
-            String pair = new String(decoded, StandardCharsets.UTF_8);
-            int idx = pair.indexOf(':');
-            return idx >= 0 ? pair.substring(0, idx) : pair;
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private String extractFromBearer(String authorization) {
-        try {
-            String jwt = authorization.substring(7).trim(); // after 'Bearer '
-            return parseJwtUsername(jwt);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private String parseJwtUsername(String jwt) {
-        try {
-            String[] parts = jwt.split("\\.");
-            if (parts.length < 2) return null;
-            String payloadB64 = parts[1];
-            byte[] payloadBytes = Base64.getUrlDecoder().decode(payloadB64);
-            String json = new String(payloadBytes, StandardCharsets.UTF_8);
-            ObjectMapper om = new ObjectMapper();
-            JsonNode node = om.readTree(json);
-            for (String key : props.getUsernameClaimKeys()) {
-                if (node.hasNonNull(key)) {
-                    return node.get(key).asText();
-                }
-            }
-            // common fallbacks
-            if (node.hasNonNull("preferred_username")) return node.get("preferred_username").asText();
-            if (node.hasNonNull("name")) return node.get("name").asText();
-            return null;
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private static String firstNonBlank(String... vals) {
-        if (vals == null) return null;
-        for (String v : vals) {
-            if (v != null && !v.isBlank()) return v;
-        }
-        return null;
+    String extractUsername(ServerHttpRequest request) {
+        return Usernames.extract(request, jwtUsernameResolver);
     }
 }
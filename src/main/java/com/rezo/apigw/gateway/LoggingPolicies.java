@@ -0,0 +1,126 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.cloud.context.properties.ConfigurationPropertiesRebinder;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable route id -> {@link LoggingPolicy} table compiled from {@link GatewayLoggingProperties}, including each
+ * route's precompiled {@link MaskingRules}.
+ * <p>
+ * Routes without an entry under {@code gateway.logging.routes} share the global policy. The table is compiled at
+ * startup and swapped atomically by {@link #rebuild()}, which runs whenever {@code gateway.logging.*} properties
+ * change in the environment (e.g. {@code /actuator/refresh}) and after runtime edits through
+ * {@link MaskingRulesEndpoint}; exchanges already in flight keep the policy they started with.
+ */
+@Component
+public class LoggingPolicies {
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingPolicies.class);
+    private static final String PREFIX = "gateway.logging.";
+
+    private final GatewayLoggingProperties props;
+    private final ObjectProvider<GatewayProperties> gatewayProperties;
+    private final ObjectProvider<ConfigurationPropertiesRebinder> rebinder;
+    private volatile Table table;
+
+    public LoggingPolicies(GatewayLoggingProperties props, ObjectProvider<GatewayProperties> gatewayProperties,
+                           ObjectProvider<ConfigurationPropertiesRebinder> rebinder) {
+        this.props = props;
+        this.gatewayProperties = gatewayProperties;
+        this.rebinder = rebinder;
+        this.table = compile(props);
+        warnAboutUnknownRoutes();
+    }
+
+    /** Policy for the route matched for this exchange (or the global policy when unrouted/unknown). */
+    LoggingPolicy resolve(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? resolve(route.getId()) : table.defaultPolicy;
+    }
+
+    LoggingPolicy resolve(String routeId) {
+        Table current = table;
+        LoggingPolicy policy = routeId != null ? current.byRouteId.get(routeId) : null;
+        return policy != null ? policy : current.defaultPolicy;
+    }
+
+    /** Current per-route policies (routes using the global policy are not listed). */
+    Map<String, LoggingPolicy> routePolicies() {
+        return table.byRouteId;
+    }
+
+    /** Recompile every policy from the current state of {@link GatewayLoggingProperties}. */
+    public synchronized void rebuild() {
+        table = compile(props);
+        log.info("Rebuilt logging policies: masked headers={}, json fields={}, form fields={}, route overrides={}",
+                props.getMaskedHeaders(), props.getMaskedJsonFields(), props.getMaskedFormFields(),
+                table.byRouteId.keySet());
+    }
+
+    @EventListener
+    public void onEnvironmentChange(EnvironmentChangeEvent event) {
+        if (event.getKeys().stream().noneMatch(key -> key.startsWith(PREFIX))) {
+            return;
+        }
+        // listener order relative to the rebinder is not guaranteed: rebind first so the rebuild sees the new values
+        rebinder.ifAvailable(r -> r.rebind(GatewayLoggingProperties.class));
+        rebuild();
+    }
+
+    private static Table compile(GatewayLoggingProperties props) {
+        LoggingPolicy defaultPolicy = compile(props, new GatewayLoggingProperties.RoutePolicy());
+        Map<String, LoggingPolicy> byRouteId = new HashMap<>();
+        props.getRoutes().forEach((routeId, overrides) -> byRouteId.put(routeId, compile(props, overrides)));
+        return new Table(defaultPolicy, Map.copyOf(byRouteId));
+    }
+
+    private static LoggingPolicy compile(GatewayLoggingProperties props, GatewayLoggingProperties.RoutePolicy route) {
+        MaskingRules maskingRules = new MaskingRules(
+                props.getMaskedHeaders(),
+                orDefault(route.getMaskedJsonFields(), props.getMaskedJsonFields()),
+                orDefault(route.getMaskedFormFields(), props.getMaskedFormFields()));
+        return new LoggingPolicy(
+                props.isEnabled() && orDefault(route.getEnabled(), true),
+                orDefault(route.getLogHeaders(), props.isLogHeaders()),
+                orDefault(route.getLogRequestBody(), props.isLogRequestBody()),
+                orDefault(route.getLogResponseBody(), props.isLogResponseBody()),
+                orDefault(route.getSamplingRate(), props.getSampling().getRate()),
+                orDefault(route.getMaxBodySize(), props.getMaxBodySize()),
+                maskingRules,
+                orDefault(route.getContentTypeIncludes(), props.getContentTypeIncludes()));
+    }
+
+    private void warnAboutUnknownRoutes() {
+        GatewayProperties gateway = gatewayProperties.getIfAvailable();
+        if (gateway == null || table.byRouteId.isEmpty()) {
+            return;
+        }
+        Set<String> known = gateway.getRoutes().stream().map(RouteDefinition::getId).collect(Collectors.toSet());
+        table.byRouteId.keySet().stream()
+                .filter(id -> !known.contains(id))
+                .forEach(id -> log.warn("gateway.logging.routes.{} does not match any configured route id {}", id, known));
+    }
+
+    private static <T> T orDefault(T value, T fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private record Table(LoggingPolicy defaultPolicy, Map<String, LoggingPolicy> byRouteId) {
+    }
+}
@@ -0,0 +1,97 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.http.MediaType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Effective, immutable logging settings for one route.
+ * <p>
+ * The loggable content types are pre-resolved into a {@code type -> subtype -> BodyFormat} table so that a
+ * per-request check is a hash lookup on the strings already held by {@link MediaType}, with no lowercasing or
+ * {@code toString()} of the header value.
+ */
+final class LoggingPolicy {
+
+    /** How a loggable body is masked before it is written to the access log. */
+    enum BodyFormat { JSON, FORM, MULTIPART, TEXT }
+
+    private static final String WILDCARD = "*";
+
+    private final boolean enabled;
+    private final boolean logHeaders;
+    private final boolean logRequestBody;
+    private final boolean logResponseBody;
+    private final double samplingRate;
+    private final int maxBodySize;
+    private final MaskingRules maskingRules;
+    private final Map<String, Map<String, BodyFormat>> bodyFormats;
+
+    LoggingPolicy(boolean enabled, boolean logHeaders, boolean logRequestBody, boolean logResponseBody,
+                  double samplingRate, int maxBodySize, MaskingRules maskingRules, List<String> contentTypeIncludes) {
+        this.enabled = enabled;
+        this.logHeaders = logHeaders;
+        this.logRequestBody = logRequestBody;
+        this.logResponseBody = logResponseBody;
+        this.samplingRate = Math.max(0d, Math.min(1d, samplingRate));
+        this.maxBodySize = maxBodySize;
+        this.maskingRules = maskingRules;
+        this.bodyFormats = compileBodyFormats(contentTypeIncludes);
+    }
+
+    boolean isEnabled() { return enabled; }
+    boolean isLogHeaders() { return logHeaders; }
+    boolean isLogRequestBody() { return logRequestBody; }
+    boolean isLogResponseBody() { return logResponseBody; }
+    double getSamplingRate() { return samplingRate; }
+    int getMaxBodySize() { return maxBodySize; }
+    MaskingRules getMaskingRules() { return maskingRules; }
+
+    /**
+     * Resolve how a body of the given content type is logged, or {@code null} when it must not be logged.
+     * An absent content type is treated as loggable text, as most JSON clients omit it.
+     */
+    BodyFormat bodyFormat(MediaType contentType) {
+        if (contentType == null) {
+            return BodyFormat.TEXT;
+        }
+        Map<String, BodyFormat> subtypes = bodyFormats.get(contentType.getType());
+        if (subtypes == null) {
+            return null;
+        }
+        BodyFormat format = subtypes.get(contentType.getSubtype());
+        if (format == null && subtypes.get(WILDCARD) != null) {
+            format = formatOf(contentType);
+        }
+        return format;
+    }
+
+    private static Map<String, Map<String, BodyFormat>> compileBodyFormats(List<String> includes) {
+        Map<String, Map<String, BodyFormat>> byType = new HashMap<>();
+        for (String include : includes) {
+            if (include == null || include.isBlank()) continue;
+            MediaType mediaType = MediaType.parseMediaType(include.trim().toLowerCase(Locale.ROOT));
+            byType.computeIfAbsent(mediaType.getType(), t -> new HashMap<>())
+                    .put(mediaType.getSubtype(), formatOf(mediaType));
+        }
+        Map<String, Map<String, BodyFormat>> frozen = new HashMap<>();
+        byType.forEach((type, subtypes) -> frozen.put(type, Map.copyOf(subtypes)));
+        return Map.copyOf(frozen);
+    }
+
+    private static BodyFormat formatOf(MediaType mediaType) {
+        if (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType) && !mediaType.isWildcardSubtype()) {
+            return BodyFormat.JSON;
+        }
+        if (MediaType.APPLICATION_FORM_URLENCODED.includes(mediaType)) {
+            return BodyFormat.FORM;
+        }
+        if (MediaType.MULTIPART_FORM_DATA.includes(mediaType)) {
+            return BodyFormat.MULTIPART;
+        }
+        return BodyFormat.TEXT;
+    }
+}
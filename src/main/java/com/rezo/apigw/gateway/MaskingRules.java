@@ -0,0 +1,113 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable, precompiled set of what the access log masks: header names (case-insensitive), JSON field names
+ * (exact) and form field names (case-insensitive), each held in a {@link NameTrie}, plus the single alternation
+ * pattern used by the regex JSON masker and the pre-encoded mask value.
+ * <p>
+ * Built by {@link LoggingPolicies} whenever the logging settings are (re)bound; maskers only ever read it.
+ */
+final class MaskingRules {
+
+    static final String MASK = "****";
+    /** {@link #MASK} as a JSON string value, quoted and encoded once for the streaming masker. */
+    static final SerializableString MASK_JSON = new SerializedString(MASK);
+
+    private final NameTrie headers;
+    private final NameTrie jsonFields;
+    private final NameTrie formFields;
+    private final Pattern jsonStringField;
+
+    MaskingRules(Collection<String> headers, Collection<String> jsonFields, Collection<String> formFields) {
+        this.headers = NameTrie.of(headers, true);
+        this.jsonFields = NameTrie.of(jsonFields, false);
+        this.formFields = NameTrie.of(formFields, true);
+        this.jsonStringField = this.jsonFields.isEmpty() ? null : Pattern.compile(
+                this.jsonFields.names().stream().map(Pattern::quote)
+                        .collect(Collectors.joining("|", "\"(", ")\"\\s*:\\s*\"(.*?)\"")));
+    }
+
+    boolean isMaskedHeader(CharSequence name) {
+        return headers.contains(name);
+    }
+
+    NameTrie jsonFields() {
+        return jsonFields;
+    }
+
+    NameTrie formFields() {
+        return formFields;
+    }
+
+    List<String> headerNames() {
+        return headers.names();
+    }
+
+    List<String> jsonFieldNames() {
+        return jsonFields.names();
+    }
+
+    List<String> formFieldNames() {
+        return formFields.names();
+    }
+
+    /** Legacy JSON masking: {@code "field":"value"} becomes {@code "field":"****"} for quoted string values only. */
+    String maskJsonStringValues(String json) {
+        if (jsonStringField == null) {
+            return json;
+        }
+        Matcher matcher = jsonStringField.matcher(json);
+        if (!matcher.find()) {
+            return json;
+        }
+        StringBuilder out = new StringBuilder(json.length());
+        do {
+            matcher.appendReplacement(out, "");
+            out.append('"').append(matcher.group(1)).append("\":\"").append(MASK).append('"');
+        } while (matcher.find());
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * Mask {@code application/x-www-form-urlencoded} values in one pass: {@code pass=secret&user=a} becomes
+     * {@code pass=****&user=a}. Keys are compared as sent (not percent-decoded).
+     */
+    String maskFormValues(String form) {
+        if (formFields.isEmpty() || form.indexOf('=') < 0) {
+            return form;
+        }
+        StringBuilder out = null;
+        int length = form.length();
+        int pairStart = 0;
+        while (pairStart <= length) {
+            int pairEnd = form.indexOf('&', pairStart);
+            if (pairEnd < 0) {
+                pairEnd = length;
+            }
+            int eq = form.indexOf('=', pairStart);
+            if (eq >= 0 && eq < pairEnd && formFields.contains(form, pairStart, eq)) {
+                if (out == null) {
+                    out = new StringBuilder(length).append(form, 0, pairStart);
+                }
+                out.append(form, pairStart, eq + 1).append(MASK);
+            } else if (out != null) {
+                out.append(form, pairStart, pairEnd);
+            }
+            if (pairEnd < length && out != null) {
+                out.append('&');
+            }
+            pairStart = pairEnd + 1;
+        }
+        return out != null ? out.toString() : form;
+    }
+}
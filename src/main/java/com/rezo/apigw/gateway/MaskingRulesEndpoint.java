@@ -0,0 +1,71 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/masking}: shows the masking rules in effect and lets operators change the global masked
+ * headers, JSON fields and form fields without a restart.
+ * <p>
+ * A write replaces only the lists it is given and recompiles every {@link LoggingPolicy}; routes that override
+ * their own fields keep them. Changes live in memory until the next restart or environment refresh of
+ * {@code gateway.logging.*}.
+ * <p>
+ * There is no authentication in front of it and an empty write switches masking off, so it must only be served on
+ * the internal management port ({@code management.server.port}/{@code address}), never on the gateway port.
+ */
+@Component
+@Endpoint(id = "masking")
+public class MaskingRulesEndpoint {
+
+    private final GatewayLoggingProperties props;
+    private final LoggingPolicies policies;
+
+    public MaskingRulesEndpoint(GatewayLoggingProperties props, LoggingPolicies policies) {
+        this.props = props;
+        this.policies = policies;
+    }
+
+    @ReadOperation
+    public Map<String, Object> rules() {
+        Map<String, Object> result = describe(policies.resolve((String) null).getMaskingRules());
+        Map<String, Object> routes = new LinkedHashMap<>();
+        policies.routePolicies().forEach((routeId, policy) -> routes.put(routeId, describe(policy.getMaskingRules())));
+        result.put("routes", routes);
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Nullable List<String> headers, @Nullable List<String> jsonFields,
+                                      @Nullable List<String> formFields) {
+        synchronized (props) {
+            if (headers != null) {
+                props.setMaskedHeaders(List.copyOf(headers));
+            }
+            if (jsonFields != null) {
+                props.setMaskedJsonFields(List.copyOf(jsonFields));
+            }
+            if (formFields != null) {
+                props.setMaskedFormFields(List.copyOf(formFields));
+            }
+            policies.rebuild();
+        }
+        return rules();
+    }
+
+    private static Map<String, Object> describe(MaskingRules rules) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("headers", rules.headerNames());
+        description.put("jsonFields", rules.jsonFieldNames());
+        description.put("formFields", rules.formFieldNames());
+        return description;
+    }
+}
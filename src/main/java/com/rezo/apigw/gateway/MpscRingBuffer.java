@@ -0,0 +1,88 @@
+package com.rezo.apigw.gateway;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free multi-producer / single-consumer ring buffer.
+ * <p>
+ * Each slot carries a sequence number (Vyukov's bounded queue): producers claim a slot with a single CAS on the
+ * tail and publish it by advancing the slot sequence; the single consumer polls in order without any CAS.
+ * {@link #offer} never blocks and returns {@code false} when the buffer is full.
+ */
+final class MpscRingBuffer<E> {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    MpscRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.slots = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /** Approximate number of queued elements; safe to call from any thread. */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    /** Producer side: enqueue without blocking. */
+    boolean offer(E element) {
+        long pos = tail.get();
+        for (;;) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index] = element;
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** Consumer side: dequeue the next published element, or {@code null} if none is ready. */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long pos = head.get();
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E element = (E) slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, pos + slots.length);
+        head.lazySet(pos + 1);
+        return element;
+    }
+
+    /** Consumer side: hand up to {@code limit} elements to {@code sink}; returns how many were drained. */
+    int drain(Consumer<? super E> sink, int limit) {
+        int drained = 0;
+        E element;
+        while (drained < limit && (element = poll()) != null) {
+            sink.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+}
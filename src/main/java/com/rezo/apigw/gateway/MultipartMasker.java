@@ -0,0 +1,228 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Byte-level masker for {@code multipart/form-data} bodies.
+ * <p>
+ * Boundaries are located with a Boyer-Moore-Horspool search directly over the body bytes; only the part headers and
+ * the values of unmasked text parts are decoded. Parts whose name matches one of the configured fields
+ * (case-insensitive) are logged as {@link MaskingRules#MASK}, file parts (a {@code filename} or a non-text
+ * {@code Content-Type}) as {@code [binary N bytes]}. A body truncated by {@code maxBodySize} is rendered up to where
+ * it was cut.
+ * <p>
+ * Instances are stateless and thread-safe.
+ */
+final class MultipartMasker {
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    /**
+     * Render {@code body} with the configured fields masked; the buffer read position is left unchanged.
+     *
+     * @return the masked body, or null when {@code boundary} does not occur in it (callers log it unparsed)
+     */
+    String mask(DataBuffer body, String boundary, NameTrie fields) {
+        ByteBuffer bytes = readable(body);
+        byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        Horspool search = new Horspool(delimiter);
+        int limit = bytes.limit();
+
+        int delimiterAt = search.indexOf(bytes, bytes.position(), limit);
+        if (delimiterAt < 0) {
+            return null;
+        }
+        // the capture is already bounded by maxBodySize and the output is rarely much shorter than the input
+        StringBuilder out = new StringBuilder(limit - bytes.position());
+        while (delimiterAt >= 0) {
+            int cursor = delimiterAt + delimiter.length;
+            out.append("--").append(boundary);
+            if (startsWith(bytes, cursor, limit, (byte) '-', (byte) '-')) {
+                out.append("--");
+                break; // close delimiter; the epilogue is not logged
+            }
+            int headersStart = skipLine(bytes, cursor, limit);
+            int blankLine = indexOfBlankLine(bytes, headersStart, limit);
+            if (blankLine < 0) {
+                appendText(out.append("\r\n"), bytes, headersStart, limit); // truncated inside the headers
+                break;
+            }
+            int headersEnd = stripLineBreak(bytes, headersStart, blankLine);
+            int valueStart = skipLine(bytes, blankLine, limit);
+            int next = search.indexOf(bytes, valueStart, limit);
+            int valueEnd = next < 0 ? limit : stripLineBreak(bytes, valueStart, next);
+
+            PartHeaders headers = PartHeaders.parse(bytes, headersStart, headersEnd);
+            out.append("\r\n").append(headers.raw).append("\r\n\r\n");
+            if (fields.contains(headers.name)) {
+                out.append(MaskingRules.MASK);
+            } else if (headers.binary) {
+                out.append("[binary ").append(valueEnd - valueStart).append(" bytes]");
+            } else {
+                appendText(out, bytes, valueStart, valueEnd);
+            }
+            out.append("\r\n");
+            delimiterAt = next;
+        }
+        return out.toString();
+    }
+
+    private static ByteBuffer readable(DataBuffer body) {
+        try (DataBuffer.ByteBufferIterator buffers = body.readableByteBuffers()) {
+            ByteBuffer first = buffers.hasNext() ? buffers.next() : ByteBuffer.allocate(0);
+            if (!buffers.hasNext()) {
+                return first;
+            }
+            // composite buffer (rare for a capture): flatten it once so the scan can index freely
+            ByteBuffer flat = ByteBuffer.allocate(body.readableByteCount());
+            flat.put(first);
+            buffers.forEachRemaining(flat::put);
+            return flat.flip();
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int at, int limit, byte first, byte second) {
+        return at + 1 < limit && bytes.get(at) == first && bytes.get(at + 1) == second;
+    }
+
+    /** Index just past the next line break at or after {@code from} (or {@code limit}). */
+    private static int skipLine(ByteBuffer bytes, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (bytes.get(i) == LF) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /** Start of the empty line that ends the part headers, or -1 when the body ends first. */
+    private static int indexOfBlankLine(ByteBuffer bytes, int from, int limit) {
+        int lineStart = from;
+        while (lineStart < limit) {
+            if (bytes.get(lineStart) == LF || startsWith(bytes, lineStart, limit, CR, LF)) {
+                return lineStart;
+            }
+            int next = skipLine(bytes, lineStart, limit);
+            if (next == limit) {
+                return -1;
+            }
+            lineStart = next;
+        }
+        return -1;
+    }
+
+    /** {@code end} minus the line break right before it, which belongs to the following delimiter or blank line. */
+    private static int stripLineBreak(ByteBuffer bytes, int start, int end) {
+        if (end > start && bytes.get(end - 1) == LF) {
+            end--;
+            if (end > start && bytes.get(end - 1) == CR) {
+                end--;
+            }
+        }
+        return end;
+    }
+
+    private static void appendText(StringBuilder out, ByteBuffer bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes.get(i);
+            if (b < 0) {
+                // non-ASCII: let the charset decode the rest of the value
+                out.append(StandardCharsets.UTF_8.decode(bytes.duplicate().limit(to).position(i)));
+                return;
+            }
+            out.append((char) b);
+        }
+    }
+
+    /** The bits of a part's header section the masker needs. */
+    private record PartHeaders(String raw, String name, boolean binary) {
+
+        static PartHeaders parse(ByteBuffer bytes, int from, int to) {
+            String raw = to > from
+                    ? StandardCharsets.UTF_8.decode(bytes.duplicate().limit(to).position(from)).toString()
+                    : "";
+            String name = null;
+            boolean file = false;
+            boolean textType = true;
+            int lineStart = 0;
+            while (lineStart < raw.length()) {
+                int lineEnd = raw.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = raw.length();
+                }
+                String line = raw.substring(lineStart, lineEnd).trim();
+                String lower = line.toLowerCase(Locale.ROOT);
+                if (lower.startsWith("content-disposition:")) {
+                    name = parameter(line, lower, "name");
+                    file = parameter(line, lower, "filename") != null;
+                } else if (lower.startsWith("content-type:")) {
+                    String type = lower.substring("content-type:".length()).trim();
+                    textType = type.startsWith("text/") || type.startsWith("application/json")
+                            || type.startsWith("application/x-www-form-urlencoded") || type.startsWith("application/xml");
+                }
+                lineStart = lineEnd + 1;
+            }
+            return new PartHeaders(raw, name, file || !textType);
+        }
+
+        /** Value of {@code ; key="value"} (or unquoted) in a header line, or null. */
+        private static String parameter(String line, String lower, String key) {
+            int at = 0;
+            while ((at = lower.indexOf(key + "=", at)) >= 0) {
+                int before = at - 1;
+                while (before >= 0 && lower.charAt(before) == ' ') {
+                    before--;
+                }
+                int valueStart = at + key.length() + 1;
+                if (before >= 0 && lower.charAt(before) == ';') {
+                    if (valueStart < line.length() && line.charAt(valueStart) == '"') {
+                        int close = line.indexOf('"', valueStart + 1);
+                        return line.substring(valueStart + 1, close < 0 ? line.length() : close);
+                    }
+                    int end = line.indexOf(';', valueStart);
+                    return line.substring(valueStart, end < 0 ? line.length() : end).trim();
+                }
+                at = valueStart;
+            }
+            return null;
+        }
+    }
+
+    /** Boyer-Moore-Horspool search for one pattern, with its bad-character shift table computed once. */
+    static final class Horspool {
+        private final byte[] pattern;
+        private final int[] shift = new int[256];
+
+        Horspool(byte[] pattern) {
+            this.pattern = pattern;
+            int last = pattern.length - 1;
+            Arrays.fill(shift, pattern.length);
+            for (int i = 0; i < last; i++) {
+                shift[pattern[i] & 0xff] = last - i;
+            }
+        }
+
+        /** First index of the pattern in {@code [from, to)} of {@code bytes}, or -1. */
+        int indexOf(ByteBuffer bytes, int from, int to) {
+            int last = pattern.length - 1;
+            int i = from;
+            while (i + last < to) {
+                int j = last;
+                while (bytes.get(i + j) == pattern[j]) {
+                    if (j == 0) {
+                        return i;
+                    }
+                    j--;
+                }
+                i += shift[bytes.get(i + last) & 0xff];
+            }
+            return -1;
+        }
+    }
+}
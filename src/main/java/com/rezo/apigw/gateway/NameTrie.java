@@ -0,0 +1,149 @@
+package com.rezo.apigw.gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable set of field or header names stored as a trie over their UTF-8 bytes, optionally ignoring ASCII case.
+ * <p>
+ * Lookups walk the candidate once, straight from a {@link CharSequence} or a byte range, so matching a name never
+ * lowercases, encodes or otherwise copies it. Nodes are flat arrays; fan-out per node is tiny for the handful of
+ * sensitive names a gateway masks, so each step is a short linear scan.
+ */
+final class NameTrie {
+
+    private static final NameTrie EMPTY = new NameTrie(false, new byte[][]{{}}, new int[][]{{}}, new boolean[1], List.of());
+
+    private final boolean ignoreCase;
+    private final byte[][] labels;
+    private final int[][] children;
+    private final boolean[] terminal;
+    private final List<String> names;
+
+    private NameTrie(boolean ignoreCase, byte[][] labels, int[][] children, boolean[] terminal, List<String> names) {
+        this.ignoreCase = ignoreCase;
+        this.labels = labels;
+        this.children = children;
+        this.terminal = terminal;
+        this.names = names;
+    }
+
+    static NameTrie of(Collection<String> names, boolean ignoreCase) {
+        if (names == null || names.isEmpty()) {
+            return EMPTY;
+        }
+        List<byte[]> labels = new ArrayList<>();
+        List<int[]> children = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        labels.add(new byte[0]);
+        children.add(new int[0]);
+        terminal.add(false);
+        List<String> kept = new ArrayList<>();
+        for (String name : names) {
+            if (name == null || name.isEmpty()) {
+                continue;
+            }
+            kept.add(name);
+            int node = 0;
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                byte label = ignoreCase ? fold(b) : b;
+                int next = find(labels.get(node), children.get(node), label);
+                if (next < 0) {
+                    next = labels.size();
+                    labels.add(new byte[0]);
+                    children.add(new int[0]);
+                    terminal.add(false);
+                    byte[] nodeLabels = Arrays.copyOf(labels.get(node), labels.get(node).length + 1);
+                    int[] nodeChildren = Arrays.copyOf(children.get(node), children.get(node).length + 1);
+                    nodeLabels[nodeLabels.length - 1] = label;
+                    nodeChildren[nodeChildren.length - 1] = next;
+                    labels.set(node, nodeLabels);
+                    children.set(node, nodeChildren);
+                }
+                node = next;
+            }
+            terminal.set(node, true);
+        }
+        boolean[] terminals = new boolean[terminal.size()];
+        for (int i = 0; i < terminals.length; i++) {
+            terminals[i] = terminal.get(i);
+        }
+        return new NameTrie(ignoreCase, labels.toArray(byte[][]::new), children.toArray(int[][]::new), terminals,
+                List.copyOf(kept));
+    }
+
+    /** The names this trie was built from, in configuration order. */
+    List<String> names() {
+        return names;
+    }
+
+    boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    boolean contains(CharSequence name) {
+        return name != null && contains(name, 0, name.length());
+    }
+
+    /** Whether the characters {@code [from, to)} of {@code name} spell one of the names. */
+    boolean contains(CharSequence name, int from, int to) {
+        if (names.isEmpty()) {
+            return false;
+        }
+        int node = 0;
+        for (int i = from; i < to && node >= 0; i++) {
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                node = step(node, (byte) c);
+            } else if (c < 0x800) {
+                node = step(step(node, (byte) (0xc0 | c >> 6)), (byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(name.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, name.charAt(++i));
+                node = step(step(step(step(node,
+                        (byte) (0xf0 | cp >> 18)),
+                        (byte) (0x80 | cp >> 12 & 0x3f)),
+                        (byte) (0x80 | cp >> 6 & 0x3f)),
+                        (byte) (0x80 | cp & 0x3f));
+            } else {
+                node = step(step(step(node,
+                        (byte) (0xe0 | c >> 12)),
+                        (byte) (0x80 | c >> 6 & 0x3f)),
+                        (byte) (0x80 | c & 0x3f));
+            }
+        }
+        return node >= 0 && terminal[node];
+    }
+
+    /** Whether the UTF-8 bytes {@code [from, to)} of {@code bytes} spell one of the names. */
+    boolean contains(ByteBuffer bytes, int from, int to) {
+        int node = names.isEmpty() ? -1 : 0;
+        for (int i = from; i < to && node >= 0; i++) {
+            node = step(node, bytes.get(i));
+        }
+        return node >= 0 && terminal[node];
+    }
+
+    private int step(int node, byte b) {
+        if (node < 0) {
+            return -1;
+        }
+        return find(labels[node], children[node], ignoreCase ? fold(b) : b);
+    }
+
+    private static int find(byte[] labels, int[] children, byte label) {
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == label) {
+                return children[i];
+            }
+        }
+        return -1;
+    }
+
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
@@ -0,0 +1,176 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayUpstreamProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+/**
+ * {@link NettyRoutingFilter} that sends the routes listed under {@code gateway.upstream.pools} through their own
+ * connection pool, so a slow or saturated upstream cannot starve the others of connections; other routes keep the
+ * gateway's shared client. Replaces the stock routing filter, which is switched off with
+ * {@code spring.cloud.gateway.server.webflux.global-filter.netty-routing.enabled=false} (see
+ * {@link UpstreamRoutingConfiguration}).
+ * <p>
+ * Each route client is built by the gateway's own {@link HttpClientFactory} (timeouts, TLS, proxy and every
+ * {@link HttpClientCustomizer} apply as usual), only its {@link ConnectionProvider} differs. Pools publish
+ * reactor-netty's {@code reactor.netty.connection.provider.*} meters tagged {@code name=<route id>}, among them
+ * {@code pending.connections.time} (time spent waiting for a connection), and
+ * {@code gateway.upstream.pool.saturation} gauges the share of a route's connections in use. The per-exchange
+ * acquire time is also in {@code gateway.exchange.phase{phase=upstream_connect}}.
+ */
+public class PooledNettyRoutingFilter extends NettyRoutingFilter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledNettyRoutingFilter.class);
+
+    private static final String POOL_METRICS = "reactor.netty.connection.provider";
+
+    private final Map<String, RoutePool> pools;
+
+    public PooledNettyRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                    HttpClientProperties httpClientProperties, ServerProperties serverProperties,
+                                    HttpClientSslConfigurer sslConfigurer, ObjectProvider<HttpClientCustomizer> customizers,
+                                    GatewayUpstreamProperties props, MeterRegistry registry) {
+        super(httpClient, headersFilters, httpClientProperties);
+        Map<String, RoutePool> byRoute = new HashMap<>();
+        props.getPools().forEach((routeId, pool) -> {
+            // the factory sorts the list it is given
+            RouteClientFactory factory = new RouteClientFactory(routeId, pool, httpClientProperties, serverProperties,
+                    sslConfigurer, new ArrayList<>(customizers.orderedStream().toList()));
+            byRoute.put(routeId, new RoutePool(factory.createInstance(), factory.provider, pool));
+            Gauge.builder("gateway.upstream.pool.saturation", registry, r -> saturation(r, routeId))
+                    .description("Share of the route's upstream connections currently in use")
+                    .tag("route", routeId)
+                    .register(registry);
+        });
+        this.pools = Map.copyOf(byRoute);
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        RoutePool pool = pools.get(route.getId());
+        if (pool == null) {
+            return super.getHttpClient(route, exchange);
+        }
+        Object connectTimeout = route.getMetadata().get(CONNECT_TIMEOUT_ATTR);
+        return connectTimeout == null ? pool.client
+                : pool.client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf(connectTimeout.toString()));
+    }
+
+    /**
+     * Opens the route pool's {@code warmup-connections} at once, each with a {@code HEAD} of {@code path} on the
+     * route URI, and emits how many were established. Any response counts: the point is the TCP and TLS handshakes.
+     */
+    Mono<Long> warmup(Route route, String path) {
+        RoutePool pool = pools.get(route.getId());
+        String scheme = route.getUri().getScheme();
+        if (pool == null || pool.config.getWarmupConnections() <= 0
+                || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            return Mono.just(0L);
+        }
+        int connections = pool.config.getWarmupConnections();
+        String uri = UriComponentsBuilder.fromUri(route.getUri()).replacePath(path).replaceQuery(null).toUriString();
+        // all requests are issued before any connection is released, so each one opens its own
+        return Flux.range(0, connections)
+                .flatMap(i -> pool.client.head().uri(uri).response()
+                        .thenReturn(1)
+                        .onErrorResume(e -> {
+                            log.debug("Warm-up connection to {} failed: {}", uri, e.toString());
+                            return Mono.empty();
+                        }), connections)
+                .count();
+    }
+
+    int warmupConnections(String routeId) {
+        RoutePool pool = pools.get(routeId);
+        return pool != null ? pool.config.getWarmupConnections() : 0;
+    }
+
+    @Override
+    public void destroy() {
+        pools.values().forEach(pool -> pool.provider.dispose());
+    }
+
+    private static double saturation(MeterRegistry registry, String routeId) {
+        double active = sum(registry, POOL_METRICS + ".active.connections", routeId);
+        double max = sum(registry, POOL_METRICS + ".max.connections", routeId);
+        return max > 0 ? active / max : 0;
+    }
+
+    /** Pools are per remote address, so a route has one set of gauges per resolved upstream address. */
+    private static double sum(MeterRegistry registry, String name, String routeId) {
+        double total = 0;
+        for (Gauge gauge : registry.find(name).tag("name", routeId).gauges()) {
+            total += gauge.value();
+        }
+        return total;
+    }
+
+    private record RoutePool(HttpClient client, ConnectionProvider provider, GatewayUpstreamProperties.Pool config) {
+    }
+
+    /** The gateway's client factory with the connection pool of one route. */
+    private static final class RouteClientFactory extends HttpClientFactory {
+
+        private final String routeId;
+        private final GatewayUpstreamProperties.Pool pool;
+        private ConnectionProvider provider;
+
+        RouteClientFactory(String routeId, GatewayUpstreamProperties.Pool pool, HttpClientProperties properties,
+                           ServerProperties serverProperties, HttpClientSslConfigurer sslConfigurer,
+                           List<HttpClientCustomizer> customizers) {
+            super(properties, serverProperties, sslConfigurer, customizers);
+            this.routeId = routeId;
+            this.pool = pool;
+        }
+
+        @Override
+        protected HttpClient createInstance() {
+            return super.createInstance();
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            ConnectionProvider.Builder builder = ConnectionProvider.builder(routeId)
+                    .maxConnections(pool.getMaxConnections())
+                    .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                    .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                    .maxIdleTime(pool.getMaxIdleTime())
+                    .maxLifeTime(pool.getMaxLifeTime())
+                    .evictInBackground(pool.getEvictionInterval())
+                    .metrics(true);
+            if (pool.getLeasingStrategy() == GatewayUpstreamProperties.LeasingStrategy.LIFO) {
+                builder.lifo();
+            } else {
+                builder.fifo();
+            }
+            provider = builder.build();
+            return provider;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayRateLimitProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the {@link LocalRateLimiter} to every routed request, keyed by the client IP.
+ * <p>
+ * With {@code key-resolver=USER_OR_IP}, requests arriving from one of {@code trusted-proxies} are keyed by the
+ * username (the same one the access log records) instead. Usernames from anyone else come from headers, Basic logins
+ * or unverified JWT claims the client controls: keying on them would hand a fresh bucket to every made-up name and
+ * let a caller drain someone else's, so they are ignored.
+ * <p>
+ * Runs right after {@link ExchangeMetricsFilter} (so refusals still show up as {@code 429} in the exchange meters)
+ * and ahead of {@link LoggingGlobalFilter}: a refused request is answered with an empty {@code 429} and
+ * {@code Retry-After} before any body is read, buffered or logged, so flooding the gateway costs it as little as
+ * possible. Allowed and refused responses both carry the {@code X-RateLimit-*} headers.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter implements GlobalFilter, Ordered {
+
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+    static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+
+    private final LocalRateLimiter limiter;
+    private final JwtUsernameResolver jwtUsernameResolver;
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 7;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        LocalRateLimiter.Limit limit = route != null ? limiter.limit(route.getId()) : null;
+        if (limit == null) {
+            return chain.filter(exchange);
+        }
+        LocalRateLimiter.Decision decision = limiter.tryAcquire(route.getId(), limit, subject(exchange));
+
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(REMAINING_HEADER, Long.toString(decision.remaining()));
+        headers.set(REPLENISH_RATE_HEADER, Integer.toString(limit.replenishRate()));
+        headers.set(BURST_CAPACITY_HEADER, Integer.toString(limit.burstCapacity()));
+        headers.set(REQUESTED_TOKENS_HEADER, "1");
+        if (decision.allowed()) {
+            return chain.filter(exchange);
+        }
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        headers.set(HttpHeaders.RETRY_AFTER,
+                Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(decision.retryAfterNanos() + 999_999_999L))));
+        return response.setComplete();
+    }
+
+    private String subject(ServerWebExchange exchange) {
+        InetSocketAddress remote = exchange.getRequest().getRemoteAddress();
+        String address = remote == null ? "-"
+                : remote.getAddress() != null ? remote.getAddress().getHostAddress() : remote.getHostString();
+        if (limiter.getKeyResolver() == GatewayRateLimitProperties.KeyResolver.USER_OR_IP
+                && limiter.isTrustedProxy(address)) {
+            String username = Usernames.of(exchange, jwtUsernameResolver);
+            if (!username.isEmpty()) {
+                return "user:" + username;
+            }
+        }
+        return "ip:" + address;
+    }
+}
@@ -0,0 +1,395 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.rezo.apigw.config.GatewayCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-bounded store of upstream responses for the lookup endpoints opted in under {@code gateway.cache.routes}.
+ * <p>
+ * Entries are keyed by route, method, URI and a SHA-256 digest of the caller's {@code Authorization} header plus the
+ * normalized request body (JSON re-serialized compactly with sorted properties, anything else as-is), so responses
+ * are never shared between callers and formatting differences between identical lookups do not defeat the cache.
+ * Eviction is Caffeine's W-TinyLFU, weighted by entry bytes, with the TTL of the entry's route; statistics are
+ * published as {@code cache.*{cache=gateway.response}} and lookups as {@code gateway.cache.requests}, tagged by
+ * {@code route} and {@code result}.
+ * <p>
+ * Bodies are kept off the Java heap, in pooled direct buffers sized to the body and weighed by their capacity, and
+ * released when their entry is evicted, expires or is replaced. Each hit writes a retained duplicate, so an entry
+ * evicted mid-write stays readable until the write has finished. The duplicate is only taken while holding a
+ * reference on the {@link Entry} itself: a pooled buffer that has been released may already be recycled for another
+ * response, so it must never be retained once its entry is gone.
+ * <p>
+ * Concurrent misses for the same key are coalesced (single flight): the first one {@link #register registers} a
+ * {@link Flight} and goes upstream, later ones {@link #follow} it and receive a copy of the response once it has
+ * been stored. The flight hands out a heap copy it owns, so a follower that subscribes late still gets the response
+ * after the stored entry has been evicted (or, with a zero TTL, never kept). {@code gateway.cache.inflight} gauges
+ * the flights in progress.
+ */
+@Component
+public class ResponseCache {
+
+    /** Outcome of one lookup, also exposed to the access log. */
+    enum Result { HIT, MISS, BYPASS, COALESCED }
+
+    /** Fixed per-entry bookkeeping cost added to the body and header bytes when weighing entries. */
+    private static final int ENTRY_OVERHEAD = 128;
+    /** Response headers that describe the original transfer rather than the response, never replayed. */
+    private static final Set<String> NOT_STORED = Set.of("connection", "keep-alive", "transfer-encoding", "te",
+            "trailer", "upgrade", "proxy-authenticate", "date", "x-cache", "age");
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter sortedWriter;
+    private final MeterRegistry registry;
+    private final Map<String, List<Rule>> rulesByRoute;
+    private final int maxEntrySize;
+    private final long maxRequestBodySize;
+    private final Cache<Key, Entry> cache;
+    private final ConcurrentHashMap<String, Counter[]> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, Flight> inFlight = new ConcurrentHashMap<>();
+
+    public ResponseCache(GatewayCacheProperties props, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.objectMapper = objectMapper;
+        this.sortedWriter = objectMapper.writer().with(JsonNodeFeature.WRITE_PROPERTIES_SORTED);
+        this.registry = registry;
+        this.rulesByRoute = compile(props);
+        this.maxEntrySize = (int) Math.min(Integer.MAX_VALUE, props.getMaxEntrySize().toBytes());
+        this.maxRequestBodySize = props.getMaxRequestBodySize().toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(props.getMaxSize().toBytes())
+                .weigher((Key key, Entry entry) -> entry.weight())
+                .expireAfter(new ExpireAfterRouteTtl())
+                // release on the thread doing the maintenance, not later on the common pool
+                .executor(Runnable::run)
+                .removalListener((Key key, Entry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        entry.release();
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "gateway.response");
+        Gauge.builder("gateway.cache.inflight", inFlight, Map::size)
+                .description("Upstream calls currently shared by coalesced identical requests")
+                .register(registry);
+    }
+
+    /** Caching rule for this request on {@code routeId}, or {@code null} when the endpoint is not cached. */
+    Rule rule(String routeId, RequestPath path) {
+        List<Rule> rules = routeId != null ? rulesByRoute.get(routeId) : null;
+        if (rules != null) {
+            PathContainer pathWithinApplication = path.pathWithinApplication();
+            for (Rule rule : rules) {
+                if (rule.pattern.matches(pathWithinApplication)) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+
+    int maxEntrySize() {
+        return maxEntrySize;
+    }
+
+    long maxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /** Factory for response captures, so cached bodies end up in pooled direct buffers. */
+    NettyDataBufferFactory bufferFactory() {
+        return bufferFactory;
+    }
+
+    Key key(Rule rule, ServerHttpRequest request, byte[] body) {
+        MessageDigest digest = sha256();
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization != null) {
+            digest.update(authorization.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        digest.update(normalize(body, request.getHeaders().getContentType()));
+        return new Key(rule.routeId, request.getMethod().name(), request.getURI().getRawPath(),
+                request.getURI().getRawQuery(), Base64.getEncoder().encodeToString(digest.digest()));
+    }
+
+    /**
+     * The cached entry for {@code key} with a retained copy of its body for the caller to write (and release), or
+     * {@code null} on a miss.
+     */
+    Hit get(Key key) {
+        Entry entry = cache.getIfPresent(key);
+        return entry != null ? hit(entry) : null;
+    }
+
+    /**
+     * Make {@code flight} the one fetching {@code key}, or return the flight already in progress for it, in which
+     * case the caller should {@link #follow} that one instead.
+     */
+    Flight register(Key key, Flight flight) {
+        return inFlight.putIfAbsent(key, flight);
+    }
+
+    /** The response of {@code flight} with a body of the caller's own, or empty when it produced none. */
+    Mono<Hit> follow(Flight flight) {
+        return flight.result.asMono().mapNotNull(this::hit);
+    }
+
+    /**
+     * End {@code flight} for {@code key}, handing {@code entry} to its followers, or nothing when the response was
+     * not stored (error, cancel, not cacheable). Only the first call for a flight counts.
+     */
+    void land(Key key, Flight flight, Entry entry) {
+        if (inFlight.remove(key, flight)) {
+            if (entry != null) {
+                flight.result.tryEmitValue(entry);
+            } else {
+                flight.result.tryEmitEmpty();
+            }
+        }
+    }
+
+    private Hit hit(Entry entry) {
+        if (!entry.retain()) {
+            // released by an eviction that raced with this lookup
+            return null;
+        }
+        try {
+            return new Hit(entry, bufferFactory.wrap(entry.body.retainedDuplicate()));
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Store a response and hand it to the followers of {@code flight} (when not {@code null}); the cache keeps an
+     * exact-size copy of {@code body}, the caller still releases its one.
+     */
+    void put(Key key, Rule rule, int status, HttpHeaders headers, DataBuffer body, Flight flight) {
+        HttpHeaders stored = new HttpHeaders();
+        headers.forEach((name, values) -> {
+            if (!NOT_STORED.contains(name.toLowerCase(Locale.ROOT))) {
+                stored.put(name, List.copyOf(values));
+            }
+        });
+        // exact-size copy: a capture of a response without Content-Length grows by doubling and can be half empty
+        ByteBuf content = NettyDataBufferFactory.toByteBuf(body);
+        int length = content.readableBytes();
+        ByteBuf copy = bufferFactory.getByteBufAllocator().directBuffer(length, length)
+                .writeBytes(content, content.readerIndex(), length);
+        Entry entry = new Entry(status, HttpHeaders.readOnlyHttpHeaders(stored), copy, rule.ttlNanos,
+                System.nanoTime());
+        // taken before the put, which may already evict the entry (a zero ttl always does)
+        Entry shared = flight != null ? entry.detached() : null;
+        cache.put(key, entry);
+        if (flight != null) {
+            land(key, flight, shared);
+        }
+    }
+
+    void count(String routeId, Result result) {
+        Counter[] byResult = counters.get(routeId);
+        if (byResult == null) {
+            byResult = counters.computeIfAbsent(routeId, id -> {
+                Counter[] created = new Counter[Result.values().length];
+                for (Result r : Result.values()) {
+                    created[r.ordinal()] = Counter.builder("gateway.cache.requests")
+                            .description("Response cache lookups on cached endpoints")
+                            .tags("route", id, "result", r.name().toLowerCase(Locale.ROOT))
+                            .register(registry);
+                }
+                return created;
+            });
+        }
+        byResult[result.ordinal()].increment();
+    }
+
+    /** Drop every entry (and its buffer). */
+    void invalidateAll() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    private byte[] normalize(byte[] body, MediaType contentType) {
+        if (body.length > 0 && contentType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                || contentType.getSubtype().endsWith("+json"))) {
+            try {
+                return sortedWriter.writeValueAsBytes(objectMapper.readTree(body));
+            } catch (IOException e) {
+                // not well-formed: key on the raw bytes
+            }
+        }
+        return body;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, List<Rule>> compile(GatewayCacheProperties props) {
+        Map<String, List<Rule>> byRoute = new HashMap<>();
+        props.getRoutes().forEach((routeId, route) -> {
+            Duration ttl = route.getTtl() != null ? route.getTtl() : props.getDefaultTtl();
+            List<Rule> rules = route.getPaths().stream()
+                    .map(path -> new Rule(routeId, PathPatternParser.defaultInstance.parse(path), ttl.toNanos(),
+                            route.isCoalesce()))
+                    .toList();
+            if (!rules.isEmpty()) {
+                byRoute.put(routeId, rules);
+            }
+        });
+        return Map.copyOf(byRoute);
+    }
+
+    record Rule(String routeId, PathPattern pattern, long ttlNanos, boolean coalesce) {
+    }
+
+    /** One upstream call shared by identical concurrent requests. */
+    static final class Flight {
+        private final Sinks.One<Entry> result = Sinks.one();
+    }
+
+    record Key(String routeId, String method, String path, String query, String digest) {
+    }
+
+    record Hit(Entry entry, DataBuffer body) {
+    }
+
+    /**
+     * A stored response. {@code body} holds one buffer reference for the entry as a whole, dropped once the cache
+     * has removed the entry and no lookup is still copying it; lookups {@link #retain} the entry, never the buffer.
+     */
+    static final class Entry {
+        private final int status;
+        private final HttpHeaders headers;
+        private final ByteBuf body;
+        private final long ttlNanos;
+        private final long storedAt;
+        /** The cache's reference plus one per lookup duplicating the body right now. */
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        Entry(int status, HttpHeaders headers, ByteBuf body, long ttlNanos, long storedAt) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.ttlNanos = ttlNanos;
+            this.storedAt = storedAt;
+        }
+
+        int status() {
+            return status;
+        }
+
+        HttpHeaders headers() {
+            return headers;
+        }
+
+        ByteBuf body() {
+            return body;
+        }
+
+        /** Take a reference, unless the entry has been released already (its buffer may be reused by then). */
+        boolean retain() {
+            for (;;) {
+                int current = refs.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                body.release();
+            }
+        }
+
+        /** A copy on the heap, not pooled, so it stays valid for as long as anyone holds it. */
+        Entry detached() {
+            return new Entry(status, headers, Unpooled.wrappedBuffer(ByteBufUtil.getBytes(body)), ttlNanos, storedAt);
+        }
+
+        int weight() {
+            long weight = ENTRY_OVERHEAD + body.capacity();
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey().length();
+                for (String value : header.getValue()) {
+                    weight += value.length();
+                }
+            }
+            return (int) Math.min(Integer.MAX_VALUE, weight);
+        }
+
+        long ageSeconds() {
+            return Duration.ofNanos(System.nanoTime() - storedAt).toSeconds();
+        }
+    }
+
+    private static final class ExpireAfterRouteTtl implements Expiry<Key, Entry> {
+        @Override
+        public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+            return entry.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+            return entry.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
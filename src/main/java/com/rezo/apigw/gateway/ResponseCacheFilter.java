@@ -0,0 +1,291 @@
+package com.rezo.apigw.gateway;
+
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Answers repeated identical lookups from {@link ResponseCache} instead of the upstream.
+ * <p>
+ * Only endpoints listed under {@code gateway.cache.routes} are considered, and only {@code GET}/{@code POST}
+ * requests whose body is at most {@code gateway.cache.max-request-body-size} and that do not ask for
+ * {@code Cache-Control: no-cache/no-store}. The request body is read once, up to that limit, to build the key and
+ * replayed to the upstream on a miss (a body that turns out longer bypasses the cache); {@code 200} responses up to
+ * {@code gateway.cache.max-entry-size}, without {@code Set-Cookie} and not marked {@code no-store}/{@code private},
+ * are captured while they stream to the client and stored once fully written. Only the upstream's headers are stored: those the gateway set for the caller before routing (such
+ * as {@code X-RateLimit-*}) are not, and a stored response never replaces them on the response it is replayed to.
+ * <p>
+ * Misses for a key that is already being fetched wait for that response instead of calling the upstream again
+ * (unless the route sets {@code coalesce=false}); when the first request yields nothing storable, the waiting ones
+ * go upstream on their own.
+ * <p>
+ * Runs after {@link LoggingGlobalFilter}, so hits are logged like any other response; every response of a cached
+ * endpoint carries {@code X-Cache: HIT/MISS/COALESCED/BYPASS} and the result is also left in
+ * {@link #CACHE_RESULT_ATTR} for the access-log record.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+
+    /** Exchange attribute holding the {@link ResponseCache.Result} of a cached endpoint. */
+    public static final String CACHE_RESULT_ATTR = ResponseCacheFilter.class.getName() + ".result";
+    static final String X_CACHE = "X-Cache";
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final ResponseCache cache;
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 20;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        ServerHttpRequest request = exchange.getRequest();
+        ResponseCache.Rule rule = route != null ? cache.rule(route.getId(), request.getPath()) : null;
+        if (rule == null) {
+            return chain.filter(exchange);
+        }
+        if (!isCacheable(request)) {
+            return passThrough(exchange, chain, rule, ResponseCache.Result.BYPASS);
+        }
+        // at most max-request-body-size bytes are read for the key, whatever Content-Length says; a longer body
+        // bypasses the cache and is replayed to the upstream as read so far, followed by the rest of the stream
+        long limit = cache.maxRequestBodySize();
+        AtomicLong read = new AtomicLong();
+        return request.getBody()
+                .windowUntil(buffer -> read.addAndGet(buffer.readableByteCount()) > limit)
+                .switchOnFirst((first, windows) -> {
+                    Flux<DataBuffer> head = first.hasValue() ? first.get() : Flux.empty();
+                    return head.collectList().flatMap(buffers -> {
+                        if (read.get() > limit) {
+                            Flux<DataBuffer> body = Flux.fromIterable(buffers)
+                                    .concatWith(windows.skip(1).concatMap(window -> window));
+                            return passThrough(withBody(exchange, body), chain, rule, ResponseCache.Result.BYPASS);
+                        }
+                        return lookup(exchange, chain, rule, toBytes(buffers));
+                    });
+                })
+                .then();
+    }
+
+    private static byte[] toBytes(List<DataBuffer> buffers) {
+        if (buffers.isEmpty()) {
+            return NO_BODY;
+        }
+        int length = 0;
+        for (DataBuffer buffer : buffers) {
+            length += buffer.readableByteCount();
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (DataBuffer buffer : buffers) {
+            int count = buffer.readableByteCount();
+            buffer.read(bytes, offset, count);
+            offset += count;
+            DataBufferUtils.release(buffer);
+        }
+        return bytes;
+    }
+
+    private static ServerWebExchange withBody(ServerWebExchange exchange, Flux<DataBuffer> body) {
+        return exchange.mutate().request(new ServerHttpRequestDecorator(exchange.getRequest()) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return body;
+            }
+        }).build();
+    }
+
+    private boolean isCacheable(ServerHttpRequest request) {
+        HttpMethod method = request.getMethod();
+        if (method != HttpMethod.GET && method != HttpMethod.POST) {
+            return false;
+        }
+        HttpHeaders headers = request.getHeaders();
+        long length = headers.getContentLength();
+        if (length > cache.maxRequestBodySize() || (length < 0 && headers.containsKey(HttpHeaders.TRANSFER_ENCODING))) {
+            return false;
+        }
+        return !hasDirective(headers.get(HttpHeaders.CACHE_CONTROL), "no-cache", "no-store");
+    }
+
+    private Mono<Void> lookup(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCache.Rule rule, byte[] body) {
+        ResponseCache.Key key = cache.key(rule, exchange.getRequest(), body);
+        ResponseCache.Hit hit = cache.get(key);
+        if (hit != null) {
+            return writeStored(exchange, rule, hit, ResponseCache.Result.HIT);
+        }
+        if (!rule.coalesce()) {
+            return forward(exchange, chain, rule, key, body, null);
+        }
+        ResponseCache.Flight flight = new ResponseCache.Flight();
+        ResponseCache.Flight inProgress = cache.register(key, flight);
+        if (inProgress != null) {
+            // an identical request is already upstream: share its response, or go on our own if it yields none
+            return cache.follow(inProgress)
+                    .flatMap(shared -> writeStored(exchange, rule, shared, ResponseCache.Result.COALESCED)
+                            .thenReturn(Boolean.TRUE))
+                    .switchIfEmpty(Mono.defer(() -> forward(exchange, chain, rule, key, body, null)
+                            .thenReturn(Boolean.TRUE)))
+                    .then();
+        }
+        return forward(exchange, chain, rule, key, body, flight)
+                .doFinally(signal -> cache.land(key, flight, null));
+    }
+
+    private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCache.Rule rule,
+                               ResponseCache.Key key, byte[] body, ResponseCache.Flight flight) {
+        cache.count(rule.routeId(), ResponseCache.Result.MISS);
+        exchange.getAttributes().put(CACHE_RESULT_ATTR, ResponseCache.Result.MISS);
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpRequest replayed = new ServerHttpRequestDecorator(request) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return body.length == 0 ? Flux.empty()
+                        : Flux.defer(() -> Flux.just(exchange.getResponse().bufferFactory().wrap(body)));
+            }
+        };
+        return chain.filter(exchange.mutate()
+                .request(replayed)
+                .response(new CachingResponse(exchange.getResponse(), key, rule, flight))
+                .build());
+    }
+
+    private Mono<Void> writeStored(ServerWebExchange exchange, ResponseCache.Rule rule, ResponseCache.Hit hit,
+                                   ResponseCache.Result result) {
+        cache.count(rule.routeId(), result);
+        exchange.getAttributes().put(CACHE_RESULT_ATTR, result);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatusCode.valueOf(hit.entry().status()));
+        // headers already on the response were set for this caller (e.g. its rate-limit quota): keep them
+        hit.entry().headers().forEach((name, values) -> {
+            if (!response.getHeaders().containsKey(name)) {
+                response.getHeaders().put(name, values);
+            }
+        });
+        response.getHeaders().set(X_CACHE, result.name());
+        if (result == ResponseCache.Result.HIT) {
+            response.getHeaders().set(HttpHeaders.AGE, Long.toString(hit.entry().ageSeconds()));
+        }
+        return response.writeWith(Mono.just(hit.body()));
+    }
+
+    private Mono<Void> passThrough(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCache.Rule rule,
+                                   ResponseCache.Result result) {
+        cache.count(rule.routeId(), result);
+        exchange.getAttributes().put(CACHE_RESULT_ATTR, result);
+        exchange.getResponse().beforeCommit(() -> {
+            exchange.getResponse().getHeaders().set(X_CACHE, result.name());
+            return Mono.empty();
+        });
+        return chain.filter(exchange);
+    }
+
+    private static boolean hasDirective(List<String> cacheControl, String... directives) {
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String value : cacheControl) {
+            for (String directive : directives) {
+                if (value.toLowerCase(Locale.ROOT).contains(directive)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tees a cacheable upstream response into a bounded capture and stores it (handing it to the followers of
+     * {@code flight}, if any) once it has been fully written.
+     */
+    private final class CachingResponse extends ServerHttpResponseDecorator {
+        private final ResponseCache.Key key;
+        private final ResponseCache.Rule rule;
+        private final ResponseCache.Flight flight;
+        /** Headers set on the response by the gateway before the upstream answered, per request and never stored. */
+        private final Set<String> gatewayHeaders;
+
+        CachingResponse(ServerHttpResponse delegate, ResponseCache.Key key, ResponseCache.Rule rule,
+                        ResponseCache.Flight flight) {
+            super(delegate);
+            this.key = key;
+            this.rule = rule;
+            this.flight = flight;
+            this.gatewayHeaders = delegate.getHeaders().keySet().stream()
+                    .map(name -> name.toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            getHeaders().set(X_CACHE, ResponseCache.Result.MISS.name());
+            if (!isStorable()) {
+                return super.writeWith(body);
+            }
+            BodyCapture capture = new BodyCapture(cache.bufferFactory(), cache.maxEntrySize(),
+                    getHeaders().getContentLength());
+            return super.writeWith(Flux.from(body).doOnNext(capture::append))
+                    .doOnSuccess(done -> {
+                        if (!capture.isTruncated()) {
+                            cache.put(key, rule, HttpStatus.OK.value(), upstreamHeaders(), capture.content(), flight);
+                        }
+                    })
+                    .doFinally(signal -> capture.release());
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // streamed responses are never cached
+            getHeaders().set(X_CACHE, ResponseCache.Result.MISS.name());
+            return super.writeAndFlushWith(body);
+        }
+
+        private HttpHeaders upstreamHeaders() {
+            HttpHeaders upstream = new HttpHeaders();
+            getHeaders().forEach((name, values) -> {
+                if (!gatewayHeaders.contains(name.toLowerCase(Locale.ROOT))) {
+                    upstream.put(name, values);
+                }
+            });
+            return upstream;
+        }
+
+        private boolean isStorable() {
+            HttpHeaders headers = getHeaders();
+            return HttpStatus.OK.equals(getStatusCode())
+                    && !headers.containsKey(HttpHeaders.SET_COOKIE)
+                    // negotiated per client: a gzip body must not be replayed to one that did not accept it
+                    && !ContentDecoding.isEncoded(headers.getFirst(HttpHeaders.CONTENT_ENCODING))
+                    && !hasDirective(headers.get(HttpHeaders.CACHE_CONTROL), "no-store", "private")
+                    && headers.getContentLength() <= cache.maxEntrySize();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayCompressionProperties;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.compression.DeflateOption;
+import reactor.netty.http.server.compression.GzipOption;
+
+import java.util.List;
+
+/**
+ * Compresses responses with gzip or deflate, as negotiated by the client's {@code Accept-Encoding}, at the Netty level
+ * (after {@link LoggingGlobalFilter} has tapped the plain body), when {@code gateway.compression.enabled=true}.
+ * <p>
+ * Only responses of the configured content types and at least {@code min-response-size} bytes are compressed.
+ * Responses that already carry a {@code Content-Encoding} (an upstream that compressed them itself) are passed
+ * through untouched rather than decoded and compressed again.
+ */
+@Component
+public class ResponseCompression implements NettyServerCustomizer {
+
+    private final GatewayCompressionProperties config;
+    private final List<MediaType> mimeTypes;
+    private final long minResponseSize;
+
+    public ResponseCompression(GatewayCompressionProperties config) {
+        this.config = config;
+        this.mimeTypes = MediaType.parseMediaTypes(config.getMimeTypes());
+        this.minResponseSize = config.getMinResponseSize().toBytes();
+    }
+
+    @Override
+    public HttpServer apply(HttpServer server) {
+        if (!config.isEnabled()) {
+            return server;
+        }
+        int level = Math.min(9, Math.max(1, config.getLevel()));
+        return server
+                .compress((request, response) -> shouldCompress(response.responseHeaders()))
+                .compressOptions(GzipOption.builder().compressionLevel(level).build(),
+                        DeflateOption.builder().compressionLevel(level).build());
+    }
+
+    boolean shouldCompress(HttpHeaders headers) {
+        if (headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return false;
+        }
+        String contentLength = headers.get(HttpHeaderNames.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) < minResponseSize) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        String contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            for (MediaType candidate : mimeTypes) {
+                if (candidate.includes(mediaType)) {
+                    return true;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            // not ours to guess at
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package com.rezo.apigw.gateway;
+
+/**
+ * Single-pass log-line normalizer: every ASCII control character (CR, LF, TAB, ... and DEL) becomes a space, runs of
+ * spaces collapse to one and the result is trimmed, so request data can never break a log record across lines.
+ * <p>
+ * Input that is already normalized is returned as-is; otherwise the text is rebuilt once in a reusable builder
+ * confined to the calling thread (usually an event loop), so a logged body costs a single copy instead of the five
+ * intermediate strings of a replace/regex chain.
+ */
+final class SingleLine {
+
+    /** Builders larger than this are not kept between calls, so one huge body does not pin memory per thread. */
+    static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    private SingleLine() {
+    }
+
+    static String of(String s) {
+        if (s == null) {
+            return "";
+        }
+        int length = s.length();
+        int clean = cleanPrefix(s, length);
+        if (clean == length) {
+            return s;
+        }
+
+        boolean reused = length <= MAX_RETAINED_CAPACITY;
+        StringBuilder out = reused ? BUILDER.get() : new StringBuilder(length);
+        out.setLength(0);
+        out.append(s, 0, clean);
+        // a pending space is only written once a visible character follows it: collapses runs and trims the tail
+        boolean pendingSpace = false;
+        for (int i = clean; i < length; i++) {
+            char c = s.charAt(i);
+            if (isBlank(c)) {
+                pendingSpace = out.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    out.append(' ');
+                    pendingSpace = false;
+                }
+                out.append(c);
+            }
+        }
+        String result = out.toString();
+        if (reused && out.capacity() > MAX_RETAINED_CAPACITY) {
+            BUILDER.remove();
+        }
+        return result;
+    }
+
+    /** Length of the leading part of {@code s} that needs no change (and {@code length} when nothing does). */
+    private static int cleanPrefix(String s, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (isBlank(s.charAt(0))) {
+            return 0;
+        }
+        boolean previousSpace = false;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < ' ' || c == 0x7f) {
+                return previousSpace ? i - 1 : i;
+            }
+            if (c == ' ') {
+                if (previousSpace) {
+                    return i - 1;
+                }
+                previousSpace = true;
+            } else {
+                previousSpace = false;
+            }
+        }
+        return previousSpace ? length - 1 : length;
+    }
+
+    private static boolean isBlank(char c) {
+        return c <= ' ' || c == 0x7f;
+    }
+}
@@ -0,0 +1,240 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayResilienceProperties;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Guards every routed upstream call with a Resilience4j circuit breaker, semaphore bulkhead and time limiter that
+ * share one instance name: the endpoint group's {@code instance} from {@code gateway.resilience.routes}, else the
+ * route id. Their settings come from the usual {@code resilience4j.*} properties, and their state and call counts
+ * are exported as {@code resilience4j.circuitbreaker.*}, {@code resilience4j.bulkhead.*} and
+ * {@code resilience4j.timelimiter.*} meters.
+ * <p>
+ * Calls are rejected up front, with a small JSON body and without touching the upstream, when the circuit is open
+ * ({@code 503} with {@code Retry-After}) or the bulkhead is full ({@code 503}); a call still running when the time
+ * limit expires is cancelled, which releases its connection and buffered bodies, and answered with {@code 504} if
+ * nothing has been sent yet. Errors and {@code 5xx} responses count as failures for the breaker.
+ * <p>
+ * Runs after {@link ResponseCacheFilter}, so cache hits and coalesced requests never take a permit. The upstream
+ * call itself is only the routing step, which {@link RoutingStage} wraps: the time limit applies to it, and the
+ * permit goes back and the breaker takes the outcome as soon as the upstream response headers have arrived. Streaming
+ * the body to the client comes later (in {@code NettyWriteResponseFilter}), so a slow client can neither time the call
+ * out nor count as a slow or failed upstream call.
+ */
+@Component
+public class UpstreamResilienceFilter implements GlobalFilter, Ordered {
+
+    /** Exchange attribute holding the {@link Call} admitted by this filter, ended by {@link RoutingStage}. */
+    static final String CALL_ATTR = UpstreamResilienceFilter.class.getName() + ".call";
+
+    private final boolean enabled;
+    private final Map<String, List<EndpointGroup>> groupsByRoute;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final BulkheadRegistry bulkheads;
+    private final TimeLimiterRegistry timeLimiters;
+    private final ConcurrentHashMap<String, Guard> guards = new ConcurrentHashMap<>();
+
+    public UpstreamResilienceFilter(GatewayResilienceProperties props, CircuitBreakerRegistry circuitBreakers,
+                                    BulkheadRegistry bulkheads, TimeLimiterRegistry timeLimiters) {
+        this.enabled = props.isEnabled();
+        this.groupsByRoute = compile(props);
+        this.circuitBreakers = circuitBreakers;
+        this.bulkheads = bulkheads;
+        this.timeLimiters = timeLimiters;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 30;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!enabled || route == null) {
+            return chain.filter(exchange);
+        }
+        Guard guard = guard(instance(route.getId(), exchange.getRequest().getPath().pathWithinApplication()));
+        CircuitBreaker circuitBreaker = guard.circuitBreaker;
+        if (!circuitBreaker.tryAcquirePermission()) {
+            long waitMillis = circuitBreaker.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1);
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, "Upstream unavailable, circuit open",
+                    Duration.ofMillis(waitMillis));
+        }
+        if (!guard.bulkhead.tryAcquirePermission()) {
+            circuitBreaker.releasePermission();
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent upstream calls", null);
+        }
+        Call call = new Call(guard);
+        exchange.getAttributes().put(CALL_ATTR, call);
+        return chain.filter(exchange)
+                // never routed (answered or failed by an earlier filter): give the permits back, no outcome
+                .doFinally(signal -> call.abandon())
+                .onErrorResume(TimeoutException.class, e -> exchange.getResponse().isCommitted() ? Mono.error(e)
+                        : reject(exchange, HttpStatus.GATEWAY_TIMEOUT, "Upstream did not answer in time", null));
+    }
+
+    private String instance(String routeId, PathContainer path) {
+        List<EndpointGroup> groups = groupsByRoute.get(routeId);
+        if (groups != null) {
+            for (EndpointGroup group : groups) {
+                for (PathPattern pattern : group.patterns) {
+                    if (pattern.matches(path)) {
+                        return group.instance;
+                    }
+                }
+            }
+        }
+        return routeId;
+    }
+
+    private Guard guard(String instance) {
+        Guard guard = guards.get(instance);
+        return guard != null ? guard : guards.computeIfAbsent(instance, name -> new Guard(
+                circuitBreakers.circuitBreaker(name), bulkheads.bulkhead(name), timeLimiters.timeLimiter(name)));
+    }
+
+    /** Fast-fail answer in the upstream's own {@code ReturnCode}/{@code Message} envelope. */
+    private static Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, String message, Duration retryAfter) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (retryAfter != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+        }
+        byte[] body = ("{\"ReturnCode\":\"" + status.value() + "\",\"Message\":\"" + message + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        headers.setContentLength(body.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private static Map<String, List<EndpointGroup>> compile(GatewayResilienceProperties props) {
+        Map<String, List<EndpointGroup>> byRoute = new HashMap<>();
+        props.getRoutes().forEach((routeId, route) -> byRoute.put(routeId, route.getEndpoints().stream()
+                .map(endpoint -> new EndpointGroup(endpoint.getPaths().stream()
+                        .map(PathPatternParser.defaultInstance::parse)
+                        .toList(), endpoint.getInstance()))
+                .toList()));
+        return Map.copyOf(byRoute);
+    }
+
+    private record EndpointGroup(List<PathPattern> patterns, String instance) {
+    }
+
+    private record Guard(CircuitBreaker circuitBreaker, Bulkhead bulkhead, TimeLimiter timeLimiter) {
+    }
+
+    /**
+     * Wraps the routing filter, whose publisher completes once the upstream response headers have arrived, with the
+     * time limit of the exchange's {@link Call} and ends the call there.
+     */
+    @Component
+    public static class RoutingStage implements GlobalFilter, Ordered {
+
+        @Override
+        public int getOrder() {
+            // just outside UpstreamTimingFilter
+            return NettyRoutingFilter.ORDER - 2;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            Call call = exchange.getAttribute(CALL_ATTR);
+            if (call == null) {
+                return chain.filter(exchange);
+            }
+            return chain.filter(exchange)
+                    .timeout(call.guard.timeLimiter.getTimeLimiterConfig().getTimeoutDuration())
+                    // the permit goes back as soon as the upstream call is over, before the body or any fallback
+                    // is written
+                    .doOnSuccess(done -> call.succeeded(exchange.getResponse().getStatusCode()))
+                    .doOnError(call::failed)
+                    .doOnCancel(call::abandon);
+        }
+    }
+
+    /** One guarded upstream call; whichever of its outcomes comes first ends it, the others are ignored. */
+    static final class Call {
+        private final Guard guard;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Call(Guard guard) {
+            this.guard = guard;
+        }
+
+        void succeeded(HttpStatusCode status) {
+            if (end()) {
+                guard.timeLimiter.onSuccess();
+                long elapsed = System.nanoTime() - start;
+                if (status != null && status.is5xxServerError()) {
+                    guard.circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS, new UpstreamStatusException(status));
+                } else {
+                    guard.circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        void failed(Throwable e) {
+            if (end()) {
+                guard.timeLimiter.onError(e);
+                guard.circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            }
+        }
+
+        /** Ended without an outcome (cancelled, or never routed). */
+        void abandon() {
+            if (end()) {
+                guard.circuitBreaker.releasePermission();
+            }
+        }
+
+        private boolean end() {
+            if (!ended.compareAndSet(false, true)) {
+                return false;
+            }
+            guard.bulkhead.onComplete();
+            return true;
+        }
+    }
+
+    /** Recorded as the breaker failure for an upstream {@code 5xx}, which is not an error signal by itself. */
+    static final class UpstreamStatusException extends RuntimeException {
+        UpstreamStatusException(HttpStatusCode status) {
+            super("Upstream answered " + status.value(), null, false, false);
+        }
+    }
+}
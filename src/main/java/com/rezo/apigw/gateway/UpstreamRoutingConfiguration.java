@@ -0,0 +1,43 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayUpstreamProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+/**
+ * Routing filters used in place of the stock {@code netty-routing} global filter, which is switched off in
+ * {@code application.properties}. The stock {@link NettyWriteResponseFilter} is registered under the same switch,
+ * so it is declared here too.
+ */
+@Configuration(proxyBeanMethods = false)
+public class UpstreamRoutingConfiguration {
+
+    @Bean
+    public PooledNettyRoutingFilter pooledNettyRoutingFilter(HttpClient httpClient,
+                                                             ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                                             HttpClientProperties httpClientProperties,
+                                                             ServerProperties serverProperties,
+                                                             HttpClientSslConfigurer sslConfigurer,
+                                                             ObjectProvider<HttpClientCustomizer> customizers,
+                                                             GatewayUpstreamProperties props, MeterRegistry registry) {
+        return new PooledNettyRoutingFilter(httpClient, headersFilters, httpClientProperties, serverProperties,
+                sslConfigurer, customizers, props, registry);
+    }
+
+    @Bean
+    public NettyWriteResponseFilter nettyWriteResponseFilter(GatewayProperties gatewayProperties) {
+        return new NettyWriteResponseFilter(gatewayProperties.getStreamingMediaTypes());
+    }
+}
@@ -0,0 +1,51 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Marks the upstream checkpoints of {@link ExchangeTimings} around the {@link NettyRoutingFilter}.
+ * <p>
+ * {@link ExchangeTimings#upstreamRequest} is taken on entry and {@link ExchangeTimings#upstreamResponse} when the
+ * routing filter's publisher completes, which happens once the upstream response headers have arrived (the body is
+ * streamed back afterwards by {@code NettyWriteResponseFilter}). The timings are also put in the Reactor context so
+ * the gateway's {@link HttpClient}, customized here, can mark {@link ExchangeTimings#upstreamConnected} once a
+ * connection has been acquired and the request is about to be sent.
+ */
+@Component
+public class UpstreamTimingFilter implements GlobalFilter, Ordered, HttpClientCustomizer {
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ExchangeTimings timings = ExchangeTimings.of(exchange);
+        if (timings == null) {
+            return chain.filter(exchange);
+        }
+        timings.upstreamRequest = System.nanoTime();
+        return chain.filter(exchange)
+                .doOnSuccess(done -> timings.upstreamResponse = System.nanoTime())
+                .contextWrite(context -> context.put(ExchangeTimings.CONTEXT_KEY, timings));
+    }
+
+    @Override
+    public HttpClient customize(HttpClient httpClient) {
+        return httpClient.doOnRequest((request, connection) -> {
+            ExchangeTimings timings = request.currentContextView().getOrDefault(ExchangeTimings.CONTEXT_KEY, null);
+            if (timings != null) {
+                timings.upstreamConnected = System.nanoTime();
+            }
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayUpstreamProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opens the {@code warmup-connections} of every route pool (see {@link PooledNettyRoutingFilter}) once the gateway
+ * has started, so the first requests do not pay for the TCP and TLS handshakes.
+ * <p>
+ * Also the {@code upstreamWarmup} health indicator: {@code OUT_OF_SERVICE} while the warm-up runs, {@code UP} once it
+ * has finished, failed or hit {@code gateway.upstream.warmup.timeout}, with the connections established per route as
+ * details. Included in the readiness group, it keeps traffic away until the pools are warm.
+ */
+@Component
+public class UpstreamWarmup implements SmartLifecycle, HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamWarmup.class);
+
+    private final PooledNettyRoutingFilter routingFilter;
+    private final RouteLocator routeLocator;
+    private final GatewayUpstreamProperties.Warmup config;
+    private final Map<String, String> established = new ConcurrentHashMap<>();
+    private volatile boolean done;
+    private volatile Disposable running;
+
+    public UpstreamWarmup(PooledNettyRoutingFilter routingFilter, RouteLocator routeLocator,
+                          GatewayUpstreamProperties props) {
+        this.routingFilter = routingFilter;
+        this.routeLocator = routeLocator;
+        this.config = props.getWarmup();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running != null || done) {
+            return;
+        }
+        if (!config.isEnabled()) {
+            done = true;
+            return;
+        }
+        running = routeLocator.getRoutes()
+                .filter(route -> routingFilter.warmupConnections(route.getId()) > 0)
+                .flatMap(route -> routingFilter.warmup(route, config.getPath())
+                        .doOnNext(count -> {
+                            int wanted = routingFilter.warmupConnections(route.getId());
+                            established.put(route.getId(), count + "/" + wanted);
+                            log.info("Warmed up {} of {} upstream connections for route {}", count, wanted, route.getId());
+                        }))
+                .then()
+                .timeout(config.getTimeout())
+                .doFinally(signal -> done = true)
+                .subscribe(null, e -> log.warn("Upstream warm-up did not finish: {}", e.toString()));
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (running != null) {
+            running.dispose();
+            running = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running != null;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = done ? Health.up() : Health.outOfService();
+        return health.withDetails(new TreeMap<>(established)).build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.rezo.apigw.gateway;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Resolves the caller's username from a request, shared by the access log and the rate limiter so both see the same
+ * subject. The result is kept in the {@link #ATTR} exchange attribute, so it is worked out at most once per exchange.
+ */
+final class Usernames {
+
+    /** Exchange attribute holding the resolved username ({@code ""} when there is none). */
+    static final String ATTR = "log.username";
+
+    private Usernames() {
+    }
+
+    /** Username already resolved for this exchange, else resolves and remembers it. */
+    static String of(ServerWebExchange exchange, JwtUsernameResolver jwtUsernameResolver) {
+        String username = exchange.getAttribute(ATTR);
+        if (username == null) {
+            username = extract(exchange.getRequest(), jwtUsernameResolver);
+            exchange.getAttributes().put(ATTR, username);
+        }
+        return username;
+    }
+
+    static String extract(ServerHttpRequest request, JwtUsernameResolver jwtUsernameResolver) {
+        HttpHeaders headers = request.getHeaders();
+        String auth = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        String path = request.getURI() != null ? request.getURI().getPath() : "";
+
+        // 1) If login request and Basic auth available -> decode username from Basic
+        if (path != null && path.toLowerCase(Locale.ROOT).contains("/login") && auth != null && auth.toLowerCase(Locale.ROOT).startsWith("basic ")) {
+            String fromBasic = extractFromBasic(auth);
+            if (fromBasic != null) return fromBasic;
+        }
+
+        // 2) Try explicit username headers often used by upstreams/proxies
+        String explicit = firstNonBlank(
+                headers.getFirst("X-Username"),
+                headers.getFirst("X-User"),
+                headers.getFirst("X-Auth-User"),
+                headers.getFirst("Username"),
+                headers.getFirst("User")
+        );
+        if (explicit != null && !explicit.isBlank()) return explicit;
+
+        // 3) Bearer JWT -> parse payload and read preferred claim keys
+        if (auth != null && auth.toLowerCase(Locale.ROOT).startsWith("bearer ")) {
+            String fromJwt = extractFromBearer(auth, jwtUsernameResolver);
+            if (fromJwt != null) return fromJwt;
+        }
+
+        // 4) Nothing found
+        return "";
+    }
+
+    private static String extractFromBasic(String authorization) {
+        try {
+            String token = authorization.substring(6).trim(); // after 'Basic '
+            byte[] decoded = Base64.getDecoder().decode(token);
+            String pair = new String(decoded, StandardCharsets.UTF_8);
+            int idx = pair.indexOf(':');
+            return idx >= 0 ? pair.substring(0, idx) : pair;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String extractFromBearer(String authorization, JwtUsernameResolver jwtUsernameResolver) {
+        try {
+            String jwt = authorization.substring(7).trim(); // after 'Bearer '
+            return jwtUsernameResolver.resolve(jwt);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String firstNonBlank(String... vals) {
+        if (vals == null) return null;
+        for (String v : vals) {
+            if (v != null && !v.isBlank()) return v;
+        }
+        return null;
+    }
+}
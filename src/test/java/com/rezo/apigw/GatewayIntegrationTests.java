@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
@@ -52,6 +53,9 @@ class GatewayIntegrationTests {
     @LocalServerPort
     private int port;
 
+    @LocalManagementPort
+    private int managementPort;
+
     @Autowired
     private Environment environment;
 
@@ -70,8 +74,8 @@ class GatewayIntegrationTests {
 
     @Test
     void actuatorHealthIsUpOrAccessible() {
-        log.info("[DEBUG_LOG] Calling /actuator/health on port {}", port);
-        client.get()
+        log.info("[DEBUG_LOG] Calling /actuator/health on management port {}", managementPort);
+        WebTestClient.bindToServer().baseUrl("http://localhost:" + managementPort).build().get()
                 .uri("/actuator/health")
                 .exchange()
                 .expectStatus().is2xxSuccessful();
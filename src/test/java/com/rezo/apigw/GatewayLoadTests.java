@@ -0,0 +1,90 @@
+package com.rezo.apigw;
+
+import com.rezo.apigw.support.LoadDriver;
+import com.rezo.apigw.support.LoadDriver.LoadReport;
+import com.rezo.apigw.support.StubUpstream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Fixed-rate load through the gateway against a local {@link StubUpstream}, once with {@code LoggingGlobalFilter}
+ * enabled and once disabled, so the difference between the two reports is the cost of logging.
+ * <p>
+ * Excluded from the default build; run with {@code ./mvnw -Pload test}. Tunables (system properties):
+ * {@code load.rps} (200), {@code load.duration} (20s), {@code load.warmup} (5s), {@code load.path} (/cireq),
+ * {@code stub.latency} (5ms) and {@code stub.response-size} (1024 bytes). Each run also lists the baseline of
+ * hitting the stub directly.
+ */
+@Tag("load")
+class GatewayLoadTests {
+
+    private static final Logger log = LoggerFactory.getLogger(GatewayLoadTests.class);
+
+    private final int rps = Integer.getInteger("load.rps", 200);
+    private final Duration duration = DurationStyle.detectAndParse(System.getProperty("load.duration", "20s"));
+    private final Duration warmup = DurationStyle.detectAndParse(System.getProperty("load.warmup", "5s"));
+    private final String path = System.getProperty("load.path", "/cireq");
+    private final Duration latency = DurationStyle.detectAndParse(System.getProperty("stub.latency", "5ms"));
+    private final int responseSize = Integer.getInteger("stub.response-size", 1024);
+
+    @Test
+    void loggingOverhead() throws Exception {
+        byte[] body = load("/rireq".equals(path) ? "payloads/rireq.person.json" : "payloads" + path + ".json");
+        List<LoadReport> reports = new ArrayList<>();
+        try (StubUpstream upstream = StubUpstream.start(latency, responseSize)) {
+            reports.add(drive("upstream", upstream.baseUrl(), body));
+            reports.add(throughGateway("logging-off", upstream, false, body));
+            reports.add(throughGateway("logging-on", upstream, true, body));
+        }
+
+        log.info("Load: {} req/s for {} on {} (stub latency {}, response {} B, request {} B)",
+                rps, duration, path, latency, responseSize, body.length);
+        reports.forEach(report -> log.info("{}", report));
+        for (LoadReport report : reports) {
+            assertEquals(0, report.errors(), () -> report.name() + " had failed requests");
+        }
+    }
+
+    private LoadReport throughGateway(String name, StubUpstream upstream, boolean logging, byte[] body) throws Exception {
+        try (ReactiveWebServerApplicationContext gateway = (ReactiveWebServerApplicationContext)
+                new SpringApplicationBuilder(ApigwApplication.class)
+                        .run("--server.port=0",
+                                "--management.server.port=0",
+                                "--upstream.base-url=" + upstream.baseUrl(),
+                                "--gateway.logging.enabled=" + logging,
+                                "--logging.file.path=target/load-logs/",
+                                // only logging differs between the runs: nothing else may refuse or reshape requests
+                                "--gateway.rate-limit.enabled=false",
+                                "--gateway.upstream.warmup.enabled=false",
+                                "--gateway.compression.enabled=false")) {
+            return drive(name, "http://127.0.0.1:" + gateway.getWebServer().getPort(), body);
+        }
+    }
+
+    private LoadReport drive(String name, String baseUrl, byte[] body) throws Exception {
+        try (LoadDriver driver = new LoadDriver(baseUrl, 1000)) {
+            driver.run(name, path, "application/json", body, StubUpstream.TOKEN, rps, warmup);
+            return driver.run(name, path, "application/json", body, StubUpstream.TOKEN, rps, duration);
+        }
+    }
+
+    private byte[] load(String resourcePath) throws Exception {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+            assertNotNull(in, "Missing resource: " + resourcePath);
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.rezo.apigw;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rezo.apigw.gateway.UpstreamWarmup;
+import com.rezo.apigw.support.StubUpstream;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Offline counterpart of {@link ApiEndpointsIntegrationTests}: the gateway forwards to an embedded
+ * {@link StubUpstream} instead of the real UAT upstream, so these run without network access or credentials.
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "logging.file.path=target/test-logs/",
+                "gateway.cache.routes.fcbv-api.paths=/cireq"
+        }
+)
+class StubUpstreamIntegrationTests {
+
+    private static final StubUpstream upstream = StubUpstream.start();
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) {
+        registry.add("upstream.base-url", upstream::baseUrl);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @LocalServerPort
+    int port;
+
+    @LocalManagementPort
+    int managementPort;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    TimeLimiterRegistry timeLimiters;
+
+    @Autowired
+    UpstreamWarmup upstreamWarmup;
+
+    WebTestClient client;
+
+    WebTestClient management;
+
+    @BeforeEach
+    void setup() {
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + port).build();
+        management = WebTestClient.bindToServer().baseUrl("http://localhost:" + managementPort).build();
+    }
+
+    @Test
+    void loginThenEveryJsonEndpointIsForwarded() throws Exception {
+        long upstreamCallsBefore = upstreamCalls();
+        MultipartBodyBuilder form = new MultipartBodyBuilder();
+        form.part("user", "fcbvB505");
+        form.part("pass", "Fcbv@2025");
+        byte[] login = client.post().uri("/login")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(form.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        String token = objectMapper.readTree(login).get("token").asText();
+        assertEquals(StubUpstream.TOKEN, token);
+
+        for (String path : StubUpstream.JSON_PATHS) {
+            String payload = "/rireq".equals(path) ? "payloads/rireq.person.json" : "payloads" + path + ".json";
+            byte[] body = client.post().uri(path)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("Authorization", "Bearer " + token)
+                    .bodyValue(load(payload))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(byte[].class).returnResult().getResponseBody();
+            JsonNode json = objectMapper.readTree(body);
+            assertEquals("000", json.get("ReturnCode").asText(), path);
+            assertEquals(path, json.get("Path").asText());
+        }
+
+        Timer upstreamTime = meterRegistry.get("gateway.upstream.duration")
+                .tags("route", "fcbv-api", "method", "POST", "status", "2xx").timer();
+        awaitUpstreamCalls(upstreamCallsBefore + 1 + StubUpstream.JSON_PATHS.size());
+        assertEquals(upstreamCallsBefore + 1 + StubUpstream.JSON_PATHS.size(), upstreamTime.count());
+        assertTrue(meterRegistry.get("gateway.exchange.duration").tags("status", "2xx").timer().totalTime(TimeUnit.NANOSECONDS)
+                > upstreamTime.totalTime(TimeUnit.NANOSECONDS));
+        assertTrue(meterRegistry.get("gateway.exchange.phase")
+                .tags("route", "fcbv-api", "phase", "upstream_connect").timer().count()
+                >= 1 + StubUpstream.JSON_PATHS.size(), "client connect hook saw the exchange timings");
+        for (String instance : new String[]{"fcbv-auth", "fcbv-report", "fcbv-api"}) {
+            assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state")
+                    .tags("name", instance, "state", "closed").gauge().value(), instance);
+        }
+        // outcomes are taken by the routing stage, around the routing filter itself
+        assertTrue(meterRegistry.get("resilience4j.circuitbreaker.calls").tags("name", "fcbv-auth", "kind", "successful")
+                .timer().count() >= 1);
+        assertEquals(Duration.ofSeconds(5), timeLimiters.timeLimiter("fcbv-auth").getTimeLimiterConfig().getTimeoutDuration());
+    }
+
+    @Test
+    void repeatedLookupIsAnsweredFromTheResponseCache() throws Exception {
+        long upstreamCallsBefore = upstreamCalls();
+        String lookup = "{\"CBSubjectCode\":\"cache-test\",\"Type\":1}";
+        String reordered = "{ \"Type\": 1, \"CBSubjectCode\": \"cache-test\" }";
+
+        byte[] first = client.post().uri("/cireq")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "Bearer " + StubUpstream.TOKEN)
+                .bodyValue(lookup)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Cache", "MISS")
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        awaitUpstreamCalls(upstreamCallsBefore + 1);
+        byte[] second = client.post().uri("/cireq")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "Bearer " + StubUpstream.TOKEN)
+                .bodyValue(reordered)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Cache", "HIT")
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertArrayEquals(first, second);
+        assertEquals(upstreamCallsBefore + 1, upstreamCalls());
+        assertTrue(meterRegistry.get("gateway.cache.requests").tags("route", "fcbv-api", "result", "hit")
+                .counter().count() >= 1);
+    }
+
+    @Test
+    void routePoolIsWarmedUpBeforeReadinessAndExportsPoolMeters() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (upstreamWarmup.health().getStatus() != Status.UP && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(Status.UP, upstreamWarmup.health().getStatus());
+        assertEquals("4/4", upstreamWarmup.health().getDetails().get("fcbv-api"));
+        client.get().uri("/readyz").exchange().expectStatus().isOk();
+        management.get().uri("/actuator/health/readiness").exchange().expectStatus().isOk();
+
+        client.post().uri("/otp")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(new MultipartBodyBuilder().build()))
+                .exchange()
+                .expectStatus().isOk();
+
+        // pools are tagged with their own id too, and earlier test contexts may have left some behind
+        assertTrue(meterRegistry.get("reactor.netty.connection.provider.total.connections").tags("name", "fcbv-api")
+                .gauges().stream().mapToDouble(Gauge::value).sum() >= 1);
+        assertFalse(meterRegistry.get("reactor.netty.connection.provider.pending.connections.time")
+                .tags("name", "fcbv-api").timers().isEmpty());
+        assertNotNull(meterRegistry.get("gateway.upstream.pool.saturation").tags("route", "fcbv-api").gauge());
+    }
+
+    @Test
+    void eventLoopWatchdogIsExposedOnTheActuator() throws Exception {
+        // wait until the probes have run on the server loops
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        Timer delay = meterRegistry.find("gateway.eventloop.delay").tags("loop", "0").timer();
+        while ((delay == null || delay.count() == 0) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            delay = meterRegistry.find("gateway.eventloop.delay").tags("loop", "0").timer();
+        }
+        assertNotNull(delay);
+        assertTrue(delay.count() > 0);
+
+        client.get().uri("/actuator/eventloops").exchange().expectStatus().isNotFound();
+        management.get().uri("/actuator/eventloops").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.stallThresholdMillis").isEqualTo(100)
+                .jsonPath("$.loops[0].thread").value(thread -> assertTrue(thread.toString().contains("-http-"), thread.toString()))
+                .jsonPath("$.stalls").isArray();
+    }
+
+    @Test
+    void maskingRulesCannotBeChangedFromTheGatewayPort() {
+        client.post().uri("/actuator/masking")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"headers\":[],\"jsonFields\":[],\"formFields\":[]}")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        management.get().uri("/actuator/masking").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.headers[0]").isEqualTo("authorization")
+                .jsonPath("$.jsonFields").value(fields -> assertTrue(fields.toString().contains("pass")));
+    }
+
+    @Test
+    void upstreamRejectionIsPassedThrough() {
+        client.post().uri("/cireq")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{}")
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    private long upstreamCalls() {
+        Timer timer = meterRegistry.find("gateway.upstream.duration")
+                .tags("route", "fcbv-api", "method", "POST", "status", "2xx").timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    /** Exchanges are recorded once their response is written, which may be just after the client has it. */
+    private void awaitUpstreamCalls(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (upstreamCalls() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private String load(String resourcePath) throws Exception {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+            assertNotNull(in, "Missing resource: " + resourcePath);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
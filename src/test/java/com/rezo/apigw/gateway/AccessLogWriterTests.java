@@ -0,0 +1,302 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogWriterTests {
+
+    @TempDir
+    Path logDir;
+
+    @Test
+    void writesFormattedRecordsInOrderFromSingleProducer() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getAsync().setEnabled(true);
+        AccessLogWriter writer = new AccessLogWriter(props, new SimpleMeterRegistry(), logDir.toString());
+
+        writer.start();
+        for (int i = 0; i < 1000; i++) {
+            writer.log("[{}][user={}] <- {} {} ms", "cid-" + i, "fcbvB505", 200, i);
+        }
+        writer.stop();
+
+        List<String> lines = Files.readAllLines(logDir.resolve("access.log"));
+        assertEquals(1000, lines.size());
+        assertTrue(lines.get(0).endsWith("[cid-0][user=fcbvB505] <- 200 0 ms"), lines.get(0));
+        assertTrue(lines.get(999).endsWith("[cid-999][user=fcbvB505] <- 200 999 ms"), lines.get(999));
+    }
+
+    @Test
+    void writesOneJsonLinePerRecordAndPlainEntriesAsMessages() throws Exception {
+        AccessLogWriter writer = structuredWriter(GatewayLoggingProperties.AccessLogFormat.JSON, "access.jsonl");
+
+        writer.start();
+        writer.log(record("cid-1", "{\"user\":\"fcbvT034\",\n\"pass\":\"****\"}"));
+        writer.log("[{}] plain", "cid-2");
+        writer.stop();
+
+        List<String> lines = Files.readAllLines(logDir.resolve("access.jsonl"));
+        assertEquals(2, lines.size());
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.readTree(lines.get(0));
+        assertEquals("cid-1", first.get("correlationId").asText());
+        assertEquals("fcbvT034", first.get("user").asText());
+        assertEquals(200, first.get("status").asInt());
+        assertEquals(12, first.get("latencyMs").asLong());
+        assertEquals("****", first.get("requestHeaders").get("Authorization").asText());
+        assertEquals("a, b", first.get("requestHeaders").get("Accept").asText());
+        assertEquals("{\"user\":\"fcbvT034\",\n\"pass\":\"****\"}", first.get("requestBody").asText());
+        assertEquals(34, first.get("requestBytes").asLong());
+        assertFalse(first.has("query"));
+        assertFalse(first.has("responseBytes"));
+        assertEquals("[cid-2] plain", mapper.readTree(lines.get(1)).get("msg").asText());
+    }
+
+    @Test
+    void writesLengthPrefixedCborRecords() throws Exception {
+        AccessLogWriter writer = structuredWriter(GatewayLoggingProperties.AccessLogFormat.CBOR, "access.cbor");
+
+        writer.start();
+        for (int i = 0; i < 100; i++) {
+            writer.log(record("cid-" + i, null));
+        }
+        writer.stop();
+
+        CBORMapper mapper = new CBORMapper();
+        try (InputStream file = Files.newInputStream(logDir.resolve("access.cbor"));
+             DataInputStream in = new DataInputStream(file)) {
+            for (int i = 0; i < 100; i++) {
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                JsonNode node = mapper.readTree(frame);
+                assertEquals("cid-" + i, node.get("correlationId").asText());
+                assertEquals("/api/otp", node.get("path").asText());
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void writeFailuresAreCountedAsErrorsNotOverflow() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getAsync().setEnabled(true);
+        AccessLogWriter writer = new AccessLogWriter(props, registry, logDir.toString()) {
+            @Override
+            OutputStream open(Path file) {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("No space left on device");
+                    }
+                };
+            }
+        };
+
+        writer.start();
+        // larger than the write buffer, so it reaches the failing stream at once
+        writer.log("[{}] {}", "cid-1", "x".repeat(512 * 1024));
+        writer.stop();
+
+        assertEquals(1, registry.get("gateway.accesslog.dropped").tags("reason", "error").counter().count());
+        assertEquals(0, registry.get("gateway.accesslog.dropped").tags("reason", "overflow").counter().count());
+    }
+
+    @Test
+    void entriesQueuedWhenTheWriterFailsFallBackToTheApplicationLog() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getAsync().setEnabled(true);
+        props.setRecordPoolSize(1);
+        CountDownLatch queued = new CountDownLatch(1);
+        AccessLogWriter writer = new AccessLogWriter(props, registry, logDir.toString()) {
+            @Override
+            OutputStream open(Path file) throws IOException {
+                try {
+                    queued.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Permission denied");
+            }
+        };
+
+        writer.start();
+        AccessLogRecord record = writer.newRecord();
+        record.correlationId = "cid-1";
+        writer.log(record);
+        for (int i = 2; i <= 5; i++) {
+            writer.log("[{}] queued", "cid-" + i);
+        }
+        assertEquals(5.0, registry.get("gateway.accesslog.queue.size").gauge().value());
+        queued.countDown();
+        writer.stop();
+
+        assertEquals(0.0, registry.get("gateway.accesslog.queue.size").gauge().value());
+        assertSame(record, writer.newRecord(), "the record went back to the pool");
+        assertEquals(0, writer.droppedCount());
+    }
+
+    @Test
+    void writerReopensTheFileAfterATransientFailure() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getAsync().setEnabled(true);
+        AtomicInteger opens = new AtomicInteger();
+        CountDownLatch reopened = new CountDownLatch(1);
+        AccessLogWriter writer = new AccessLogWriter(props, registry, logDir.toString()) {
+            @Override
+            OutputStream open(Path file) throws IOException {
+                if (opens.incrementAndGet() == 1) {
+                    return new OutputStream() {
+                        @Override
+                        public void write(int b) throws IOException {
+                            throw new IOException("No space left on device");
+                        }
+                    };
+                }
+                reopened.countDown();
+                return super.open(file);
+            }
+        };
+
+        writer.start();
+        writer.log("[{}] {}", "cid-1", "x".repeat(512 * 1024));
+        assertTrue(reopened.await(5, TimeUnit.SECONDS), "the file is opened again after a backoff");
+        writer.log("[{}] written", "cid-2");
+        writer.stop();
+
+        List<String> lines = Files.readAllLines(logDir.resolve(props.getAsync().getFileName()));
+        assertEquals(1, lines.size(), lines.toString());
+        assertTrue(lines.get(0).endsWith("[cid-2] written"), lines.get(0));
+        assertEquals(1, registry.get("gateway.accesslog.dropped").tags("reason", "error").counter().count());
+    }
+
+    @Test
+    void entriesOfferedWhileTheWriterStopsAreNeverStranded() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getAsync().setEnabled(true);
+        props.getAsync().setBufferSize(1 << 16);
+        AccessLogWriter writer = new AccessLogWriter(props, registry, logDir.toString());
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        CountDownLatch started = new CountDownLatch(4);
+
+        writer.start();
+        for (int p = 0; p < 4; p++) {
+            producers.execute(() -> {
+                started.countDown();
+                for (int i = 0; i < 20_000; i++) {
+                    writer.log("[{}] entry", i);
+                }
+            });
+        }
+        started.await();
+        writer.stop();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(0.0, registry.get("gateway.accesslog.queue.size").gauge().value());
+    }
+
+    @Test
+    void recycledRecordsIgnoreLateBodyAttachments() {
+        AccessLogRecord.Pool pool = new AccessLogRecord.Pool(1);
+        AccessLogRecord record = pool.acquire();
+        int generation = record.generation();
+        assertTrue(record.attachRequestBody(generation, "{}", 2));
+        record.seal();
+        assertFalse(record.attachResponseBody(generation, "late", 4));
+        assertNull(record.responseBody);
+
+        pool.release(record);
+        AccessLogRecord reused = pool.acquire();
+        assertSame(record, reused);
+        assertNull(reused.requestBody);
+        assertEquals(-1, reused.requestBytes);
+        assertFalse(reused.attachResponseBody(generation, "stale", 5));
+        assertTrue(reused.attachResponseBody(reused.generation(), "fresh", 5));
+    }
+
+    private AccessLogWriter structuredWriter(GatewayLoggingProperties.AccessLogFormat format, String fileName) {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setFormat(format);
+        props.getAsync().setEnabled(true);
+        props.getAsync().setFileName(fileName);
+        return new AccessLogWriter(props, new SimpleMeterRegistry(), logDir.toString());
+    }
+
+    private static AccessLogRecord record(String correlationId, String requestBody) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Authorization", "Bearer secret");
+        headers.add("Accept", "a");
+        headers.add("Accept", "b");
+        AccessLogRecord record = new AccessLogRecord();
+        record.timestamp = 1_700_000_000_000L;
+        record.correlationId = correlationId;
+        record.user = "fcbvT034";
+        record.method = "POST";
+        record.path = "/api/otp";
+        record.requestHeaders = AccessLogRecord.snapshot(headers,
+                new MaskingRules(List.of("authorization"), List.of(), List.of()));
+        record.requestBody = requestBody;
+        record.requestBytes = requestBody != null ? requestBody.length() : -1;
+        record.status = 200;
+        record.latencyMillis = 12;
+        return record;
+    }
+
+    @Test
+    void ringBufferRejectsWhenFullAndKeepsEveryAcceptedElement() throws Exception {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1000);
+        assertEquals(1024, buffer.capacity());
+
+        int producers = 4;
+        int perProducer = 1000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+        int[] accepted = new int[producers];
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            pool.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    if (buffer.offer(id * perProducer + i)) accepted[id]++;
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drain(drained::add, Integer.MAX_VALUE);
+        int total = 0;
+        for (int a : accepted) total += a;
+        assertEquals(buffer.capacity(), total);
+        assertEquals(total, drained.size());
+        assertNull(buffer.poll());
+        assertTrue(buffer.offer(-1));
+    }
+}
@@ -0,0 +1,47 @@
+package com.rezo.apigw.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BodyCaptureTests {
+
+    private final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void capturesBoundedPrefixAcrossChunksWithoutConsumingSource() {
+        BodyCapture capture = new BodyCapture(factory, 8, -1);
+        DataBuffer first = buffer("hello");
+        DataBuffer second = buffer(" world");
+
+        capture.append(first);
+        capture.append(second);
+
+        assertEquals("hello wo", capture.content().toString(StandardCharsets.UTF_8));
+        assertEquals(11, capture.totalBytes());
+        assertTrue(capture.isTruncated());
+        assertEquals("hello", first.toString(StandardCharsets.UTF_8));
+        assertEquals(" world", second.toString(StandardCharsets.UTF_8));
+        assertEquals(0, first.readPosition());
+    }
+
+    @Test
+    void emptyAfterRelease() {
+        BodyCapture capture = new BodyCapture(factory, 1024, 5);
+        capture.append(buffer("12345"));
+        assertFalse(capture.isTruncated());
+
+        capture.release();
+        capture.append(buffer("more"));
+
+        assertEquals(0, capture.content().readableByteCount());
+    }
+
+    private DataBuffer buffer(String text) {
+        return factory.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
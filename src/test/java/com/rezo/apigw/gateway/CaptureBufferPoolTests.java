@@ -0,0 +1,94 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureBufferPoolTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void capturesStartAtAndGrowThroughTheSizeClasses() {
+        CaptureBufferPool pool = pool(GatewayLoggingProperties.LeakDetection.DISABLED);
+        assertEquals(4096, pool.sizeClass(1));
+        assertEquals(16384, pool.sizeClass(4097));
+        assertEquals(3 << 20, pool.sizeClass(3 << 20), "beyond the largest class");
+
+        BodyCapture capture = pool.scope().capture(1 << 20, -1);
+        capture.append(buffer("x".repeat(100)));
+        assertEquals(4096, capture.content().capacity());
+        capture.append(buffer("y".repeat(5000)));
+        assertEquals(16384, capture.content().capacity());
+        assertEquals(5100, capture.content().readableByteCount());
+        assertTrue(registry.get("gateway.capture.pool.used").gauge().value() >= 16384);
+        capture.release();
+    }
+
+    @Test
+    void scopeReleasesWhatItsExchangeStillHolds() {
+        CaptureBufferPool pool = pool(GatewayLoggingProperties.LeakDetection.DISABLED);
+        CaptureBufferPool.Scope scope = pool.scope();
+        BodyCapture request = scope.capture(1024, 5);
+        BodyCapture response = scope.capture(1024, -1);
+        request.append(buffer("hello"));
+        response.append(buffer("world"));
+        request.release();
+
+        assertEquals(1, pool.active());
+        assertEquals(1.0, registry.get("gateway.capture.pool.active").gauge().value());
+        scope.releaseAll();
+        scope.releaseAll();
+
+        assertEquals(0, pool.active());
+        assertEquals(0, response.content().readableByteCount());
+        assertEquals(2.0, registry.get("gateway.capture.pool.allocations").counter().count());
+    }
+
+    @Test
+    void capturesTakenAfterTheScopeWasReleasedAreNeverHeld() {
+        CaptureBufferPool pool = pool(GatewayLoggingProperties.LeakDetection.PARANOID);
+        CaptureBufferPool.Scope scope = pool.scope();
+        scope.capture(1024, -1).append(buffer("early"));
+        scope.releaseAll();
+
+        BodyCapture late = scope.capture(1024, -1);
+        late.append(buffer("late"));
+
+        assertEquals(0, pool.active());
+        assertEquals(List.of(), pool.outstanding());
+        assertEquals(0, late.content().readableByteCount());
+    }
+
+    @Test
+    void paranoidModeReportsWhereUnreleasedCapturesWereAllocated() {
+        CaptureBufferPool pool = pool(GatewayLoggingProperties.LeakDetection.PARANOID);
+        BodyCapture leaked = pool.scope().capture(1024, -1);
+        pool.scope().capture(1024, -1).release();
+
+        assertEquals(1, pool.outstanding().size());
+        StackTraceElement site = pool.outstanding().get(0).getStackTrace()[1];
+        assertEquals(CaptureBufferPool.Scope.class.getName(), site.getClassName());
+
+        leaked.release();
+        assertTrue(pool.outstanding().isEmpty());
+    }
+
+    private CaptureBufferPool pool(GatewayLoggingProperties.LeakDetection leakDetection) {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getCapture().setArenas(1);
+        props.getCapture().setLeakDetection(leakDetection);
+        return new CaptureBufferPool(props, registry);
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
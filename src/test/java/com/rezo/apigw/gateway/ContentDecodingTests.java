@@ -0,0 +1,73 @@
+package com.rezo.apigw.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDecodingTests {
+
+    private static final String TEXT = "{\"user\":\"fcbvT034\",\"pass\":\"Fcbv@2025\"}".repeat(100);
+
+    @Test
+    void decodesGzipAndBothFlavoursOfDeflateWithoutMovingTheReadPosition() throws IOException {
+        DataBuffer gzip = wrap(gzip(TEXT));
+
+        assertEquals(TEXT, decode(gzip, "gzip", 1 << 20));
+        assertEquals(0, gzip.readPosition());
+        assertEquals(TEXT, decode(wrap(deflate(TEXT, false)), "deflate", 1 << 20));
+        assertEquals(TEXT, decode(wrap(deflate(TEXT, true)), " Deflate ", 1 << 20));
+    }
+
+    @Test
+    void decodedOutputIsBoundedAndTruncatedCapturesYieldTheirPrefix() throws IOException {
+        assertEquals(TEXT.substring(0, 100), decode(wrap(gzip(TEXT)), "gzip", 100));
+
+        byte[] compressed = gzip(TEXT);
+        String prefix = decode(wrap(Arrays.copyOf(compressed, compressed.length / 2)), "gzip", 1 << 20);
+        assertFalse(prefix.isEmpty());
+        assertTrue(TEXT.startsWith(prefix));
+    }
+
+    @Test
+    void unsupportedOrBrokenEncodingsAreNotDecoded() {
+        assertNull(ContentDecoding.decode(wrap(new byte[]{1, 2, 3}), "br", 100));
+        assertNull(ContentDecoding.decode(wrap("not gzip".getBytes(StandardCharsets.UTF_8)), "gzip", 100));
+        assertFalse(ContentDecoding.isEncoded("identity"));
+        assertFalse(ContentDecoding.isEncoded(null));
+        assertTrue(ContentDecoding.isEncoded("gzip"));
+    }
+
+    private static String decode(DataBuffer body, String encoding, int limit) {
+        return new String(ContentDecoding.decode(body, encoding, limit), StandardCharsets.UTF_8);
+    }
+
+    private static DataBuffer wrap(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String text, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+}
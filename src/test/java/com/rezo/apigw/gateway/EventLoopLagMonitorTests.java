@@ -0,0 +1,129 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayEventLoopProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.client.ReactorResourceFactory;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLoopLagMonitorTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LoopResources loops = LoopResources.create("lag-test", 1, true);
+    private EventLoopLagMonitor monitor;
+
+    @AfterEach
+    void tearDown() {
+        if (monitor != null) {
+            monitor.stop();
+        }
+        loops.disposeLater().block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void blockedLoopIsSampledAndShowsUpInMetricsAndEndpoint() throws Exception {
+        GatewayEventLoopProperties props = new GatewayEventLoopProperties();
+        props.setProbeInterval(Duration.ofMillis(10));
+        props.setStallThreshold(Duration.ofMillis(50));
+        monitor = monitor(props);
+        monitor.start();
+        awaitProbes();
+
+        loops.onServer(true).next().execute(EventLoopLagMonitorTests::blockForAWhile);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (monitor.stallSamples().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        List<EventLoopLagMonitor.StallSample> samples = monitor.stallSamples();
+        assertEquals(1, samples.size(), "one sample per stall");
+        EventLoopLagMonitor.StallSample sample = samples.get(0);
+        assertTrue(sample.thread().startsWith("lag-test"), sample.thread());
+        assertTrue(sample.lagMillis() >= 50, "lag " + sample.lagMillis());
+        assertTrue(sample.stack().stream().anyMatch(frame -> frame.contains("blockForAWhile")), sample.stack().toString());
+        assertTrue(registry.get("gateway.eventloop.lag").tag("loop", "0").timeGauge().value(TimeUnit.MILLISECONDS) > 50);
+
+        Map<String, Object> body = new EventLoopsEndpoint(monitor).eventLoops();
+        assertEquals(50L, body.get("stallThresholdMillis"));
+        assertEquals(samples, body.get("stalls"));
+        List<?> loopStates = (List<?>) body.get("loops");
+        assertEquals(1, loopStates.size());
+    }
+
+    @Test
+    void loopAlreadyStalledWhenMonitoringStartsIsSampledWithItsStack() throws Exception {
+        GatewayEventLoopProperties props = new GatewayEventLoopProperties();
+        props.setProbeInterval(Duration.ofMillis(10));
+        props.setStallThreshold(Duration.ofMillis(50));
+        CountDownLatch blocked = new CountDownLatch(1);
+        loops.onServer(true).next().execute(() -> {
+            blocked.countDown();
+            blockForAWhile();
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        monitor = monitor(props);
+        monitor.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (monitor.stallSamples().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        List<EventLoopLagMonitor.StallSample> samples = monitor.stallSamples();
+        assertEquals(1, samples.size(), "one sample per stall");
+        assertTrue(samples.get(0).thread().startsWith("lag-test"), samples.get(0).thread());
+        assertTrue(samples.get(0).stack().stream().anyMatch(frame -> frame.contains("blockForAWhile")),
+                samples.get(0).stack().toString());
+    }
+
+    @Test
+    void probeDelaysAreRecordedPerLoopAndMetersGoAwayOnStop() throws Exception {
+        GatewayEventLoopProperties props = new GatewayEventLoopProperties();
+        props.setProbeInterval(Duration.ofMillis(10));
+        monitor = monitor(props);
+        monitor.start();
+
+        awaitProbes();
+
+        assertTrue(registry.get("gateway.eventloop.delay").tag("loop", "0").timer().count() > 0);
+        assertTrue(monitor.stallSamples().isEmpty());
+        monitor.stop();
+        assertNull(registry.find("gateway.eventloop.delay").timer());
+        assertNull(registry.find("gateway.eventloop.lag").timeGauge());
+    }
+
+    private EventLoopLagMonitor monitor(GatewayEventLoopProperties props) {
+        ReactorResourceFactory resources = new ReactorResourceFactory();
+        resources.setUseGlobalResources(false);
+        resources.setLoopResources(loops);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("reactorResourceFactory", resources);
+        return new EventLoopLagMonitor(beans.getBeanProvider(ReactorResourceFactory.class), props, registry);
+    }
+
+    private void awaitProbes() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (monitor.probes().get(0).delay().count() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(monitor.probes().get(0).thread());
+    }
+
+    private static void blockForAWhile() {
+        try {
+            Thread.sleep(400);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
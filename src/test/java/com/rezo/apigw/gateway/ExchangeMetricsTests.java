@@ -0,0 +1,97 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExchangeMetrics metrics = new ExchangeMetrics(new GatewayLoggingProperties(), registry);
+    private final ExchangeMetricsFilter filter = new ExchangeMetricsFilter(metrics);
+    private final UpstreamTimingFilter upstreamTiming = new UpstreamTimingFilter();
+
+    @Test
+    void recordsPhaseTimersAndCountedBodySizesPerRouteMethodAndStatusClass() {
+        MockServerWebExchange exchange = routed(MockServerHttpRequest.post("/cireq")
+                .header("Transfer-Encoding", "chunked")
+                .body("{\"a\":1}"));
+
+        filter.filter(exchange, ex -> ex.getRequest().getBody().then(
+                upstreamTiming.filter(ex, upstream -> Mono.fromRunnable(ExchangeMetricsTests::slowUpstream)))
+                .then(Mono.defer(() -> {
+                    ex.getResponse().setStatusCode(HttpStatus.BAD_GATEWAY);
+                    return ex.getResponse().writeWith(Flux.just("chunk-1", "chunk-22").map(ExchangeMetricsTests::buffer));
+                }))).block();
+
+        Timer total = registry.get("gateway.exchange.duration")
+                .tags("route", "fcbv-api", "method", "POST", "status", "5xx").timer();
+        Timer upstream = registry.get("gateway.upstream.duration").tags("status", "5xx").timer();
+        Timer overhead = registry.get("gateway.exchange.overhead").tags("status", "5xx").timer();
+        assertEquals(1, total.count());
+        assertTrue(upstream.totalTime(TimeUnit.MILLISECONDS) >= 30);
+        assertTrue(total.totalTime(TimeUnit.NANOSECONDS)
+                >= upstream.totalTime(TimeUnit.NANOSECONDS) + overhead.totalTime(TimeUnit.NANOSECONDS));
+        assertEquals(7, registry.get("gateway.exchange.request.size").summary().totalAmount());
+        assertEquals(15, registry.get("gateway.exchange.response.size").summary().totalAmount());
+        assertEquals(1, registry.get("gateway.exchange.phase").tags("phase", "request_body").timer().count());
+        assertEquals(1, registry.get("gateway.exchange.phase").tags("phase", "response_write").timer().count());
+        assertEquals(0, registry.get("gateway.exchange.phase").tags("phase", "upstream_connect").timer().count(),
+                "no HTTP client involved");
+        assertTrue(registry.get("gateway.exchange.phase").tags("phase", "upstream_wait").timer()
+                .totalTime(TimeUnit.MILLISECONDS) >= 30);
+
+        CountAtBucket[] buckets = total.takeSnapshot().histogramCounts();
+        assertEquals(10, buckets.length, "one bucket per configured SLO");
+    }
+
+    @Test
+    void usesContentLengthAndTagsCancelledOrUnknownStatuses() {
+        MockServerWebExchange exchange = routed(MockServerHttpRequest.put("/otp").contentLength(5).body("12345"));
+
+        filter.filter(exchange, ex -> Mono.never()).subscribe().dispose();
+
+        DistributionSummary requestSize = registry.get("gateway.exchange.request.size")
+                .tags("method", "PUT", "status", "CANCELLED").summary();
+        assertEquals(5, requestSize.totalAmount());
+        assertEquals(1, registry.get("gateway.exchange.duration").tags("status", "CANCELLED").timer().count());
+        assertEquals(0, registry.get("gateway.upstream.duration").tags("status", "CANCELLED").timer().count(),
+                "never reached the upstream");
+    }
+
+    private static MockServerWebExchange routed(MockServerHttpRequest request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+                Route.async().id("fcbv-api").uri("http://localhost").predicate(ex -> true).build());
+        return exchange;
+    }
+
+    private static void slowUpstream() {
+        try {
+            Thread.sleep(30);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
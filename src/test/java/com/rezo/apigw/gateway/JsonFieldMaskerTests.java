@@ -0,0 +1,68 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonFieldMaskerTests {
+
+    private static final NameTrie FIELDS = NameTrie.of(List.of("pass", "otp", "token"), false);
+
+    private final JsonFieldMasker masker = new JsonFieldMasker(new JsonFactory());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void masksStringNumericAndNestedValues() throws IOException {
+        String json = """
+                {"user":"fcbvB505","pass":"Fcbv@2025","otp":123456,
+                 "token":{"access":"abc","refresh":["x","y"]},"keep":{"pass":null}}
+                """;
+
+        JsonNode masked = objectMapper.readTree(mask(json));
+
+        assertEquals("fcbvB505", masked.get("user").asText());
+        assertEquals(MaskingRules.MASK, masked.get("pass").asText());
+        assertEquals(MaskingRules.MASK, masked.get("otp").asText());
+        assertEquals(MaskingRules.MASK, masked.get("token").asText());
+        assertEquals(MaskingRules.MASK, masked.get("keep").get("pass").asText());
+    }
+
+    @Test
+    void leavesUnmaskedDocumentIntact() throws IOException {
+        String json = load("payloads/rireq.person.json");
+
+        assertEquals(objectMapper.readTree(json), objectMapper.readTree(mask(json)));
+    }
+
+    @Test
+    void keepsHighPrecisionDecimalsAsSent() throws IOException {
+        String json = "{\"amount\":123456789012345678.99,\"rate\":0.10000000000000000055,\"pass\":1.5}";
+
+        assertEquals("{\"amount\":123456789012345678.99,\"rate\":0.10000000000000000055,\"pass\":\""
+                + MaskingRules.MASK + "\"}", mask(json));
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        assertThrows(IOException.class, () -> mask("{\"user\":\"a\",\"pass\":\"sec"));
+    }
+
+    private String mask(String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return masker.mask(bytes, 0, bytes.length, FIELDS);
+    }
+
+    private String load(String resourcePath) throws IOException {
+        try (java.io.InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+            assertNotNull(in, "Missing resource: " + resourcePath);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUsernameResolverTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtUsernameResolver resolver =
+            new JwtUsernameResolver(new GatewayLoggingProperties(), new ObjectMapper(), meterRegistry);
+
+    @Test
+    void prefersConfiguredClaimOrderOverFallbacks() {
+        String jwt = jwt("{\"name\":\"Full Name\",\"sub\":\"subject\",\"roles\":[\"a\"],\"username\":\"fcbvB505\"}");
+
+        assertEquals("fcbvB505", resolver.resolve(jwt));
+        assertEquals("Full Name", resolver.resolve(jwt("{\"name\":\"Full Name\",\"iat\":1}")));
+    }
+
+    @Test
+    void cachesResultsAndReportsHitsAndMisses() {
+        String jwt = jwt("{\"sub\":\"fcbvT034\",\"exp\":" + (System.currentTimeMillis() / 1000 + 3600) + "}");
+
+        assertEquals("fcbvT034", resolver.resolve(jwt));
+        assertEquals("fcbvT034", resolver.resolve(jwt));
+
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void returnsNullForMalformedOrClaimlessTokens() {
+        assertNull(resolver.resolve("not-a-jwt"));
+        assertNull(resolver.resolve("a.%%%.c"));
+        assertNull(resolver.resolve(jwt("{\"iat\":1}")));
+    }
+
+    private static String jwt(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".sig";
+    }
+}
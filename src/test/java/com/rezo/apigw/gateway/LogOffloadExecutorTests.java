@@ -0,0 +1,97 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogOffloadExecutorTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void laneRunsItsTasksInOrderOnVirtualThreads() {
+        LogOffloadExecutor offload = offload(2, 8);
+        offload.start();
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        List<Boolean> virtual = new CopyOnWriteArrayList<>();
+
+        Executor lane = offload.lane();
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            lane.execute(() -> {
+                order.add(n);
+                virtual.add(Thread.currentThread().isVirtual());
+            });
+        }
+        offload.stop();
+
+        assertEquals(100, order.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, order.get(i));
+        }
+        assertFalse(virtual.contains(false));
+    }
+
+    @Test
+    void callerRunsTheWorkOnceTheQueueIsFull() throws Exception {
+        LogOffloadExecutor offload = offload(1, 1);
+        offload.start();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        offload.lane().execute(() -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        offload.lane().execute(() -> {
+        });
+        assertEquals(1, offload.queued());
+        assertEquals(1.0, registry.get("gateway.logging.offload.queue.size").gauge().value());
+
+        Thread caller = Thread.currentThread();
+        List<Thread> ranOn = new CopyOnWriteArrayList<>();
+        offload.lane().execute(() -> ranOn.add(Thread.currentThread()));
+
+        assertEquals(List.of(caller), ranOn);
+        assertEquals(1.0, registry.get("gateway.logging.offload.caller-runs").counter().count());
+        release.countDown();
+        offload.stop();
+        assertEquals(0, offload.queued());
+    }
+
+    @Test
+    void runsInlineWhenDisabled() {
+        LogOffloadExecutor offload = new LogOffloadExecutor(new GatewayLoggingProperties(), registry);
+        offload.start();
+        List<Thread> ranOn = new CopyOnWriteArrayList<>();
+
+        offload.lane().execute(() -> ranOn.add(Thread.currentThread()));
+
+        assertFalse(offload.isRunning());
+        assertEquals(List.of(Thread.currentThread()), ranOn);
+    }
+
+    private LogOffloadExecutor offload(int maxConcurrency, int queueSize) {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getOffload().setEnabled(true);
+        props.getOffload().setMaxConcurrency(maxConcurrency);
+        props.getOffload().setQueueSize(queueSize);
+        return new LogOffloadExecutor(props, registry);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
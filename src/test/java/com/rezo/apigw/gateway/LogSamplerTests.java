@@ -0,0 +1,53 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayEventLoopProperties;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ReactorResourceFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSamplerTests {
+
+    @Test
+    void adaptiveModeScalesRateDownWithInFlightExchanges() {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getSampling().setMode(GatewayLoggingProperties.SamplingMode.ADAPTIVE);
+        props.getSampling().setMaxInFlight(10);
+        props.getSampling().setMinRate(0.1);
+        LogSampler sampler = sampler(props);
+
+        assertEquals(1.0, sampler.effectiveRate(1.0));
+        for (int i = 0; i < 20; i++) sampler.enter();
+        assertEquals(0.5, sampler.effectiveRate(1.0), 1e-9);
+        for (int i = 0; i < 180; i++) sampler.enter();
+        assertEquals(0.1, sampler.effectiveRate(1.0), 1e-9);
+        for (int i = 0; i < 200; i++) sampler.exit();
+        assertEquals(1.0, sampler.effectiveRate(1.0));
+    }
+
+    @Test
+    void errorsAndSlowModePromotesFailedOrSlowResponsesOnly() {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getSampling().setMode(GatewayLoggingProperties.SamplingMode.ERRORS_AND_SLOW);
+        LogSampler sampler = sampler(props);
+        long fast = TimeUnit.MILLISECONDS.toNanos(5);
+
+        assertFalse(sampler.promote(HttpStatus.OK, fast));
+        assertTrue(sampler.promote(HttpStatus.BAD_GATEWAY, fast));
+        assertTrue(sampler.promote(HttpStatus.OK, props.getSampling().getSlowThreshold().toNanos()));
+        assertFalse(sampler(new GatewayLoggingProperties()).promote(HttpStatus.BAD_GATEWAY, fast));
+    }
+
+    private static LogSampler sampler(GatewayLoggingProperties props) {
+        EventLoopLagMonitor idleMonitor =
+                new EventLoopLagMonitor(new StaticListableBeanFactory().getBeanProvider(ReactorResourceFactory.class),
+                        new GatewayEventLoopProperties(), new SimpleMeterRegistry());
+        return new LogSampler(props, idleMonitor, new SimpleMeterRegistry());
+    }
+}
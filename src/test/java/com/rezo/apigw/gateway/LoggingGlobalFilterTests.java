@@ -0,0 +1,282 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rezo.apigw.config.GatewayEventLoopProperties;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.context.properties.ConfigurationPropertiesRebinder;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoggingGlobalFilterTests {
+
+    @TempDir
+    Path logDir;
+
+    private static final GatewayFilterChain ECHO = exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+            .flatMap(body -> {
+                exchange.getResponse().setStatusCode(HttpStatus.OK);
+                exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                return exchange.getResponse().writeWith(Mono.just(body));
+            });
+
+    @Test
+    void consolidatedTextModeWritesOneLinePerExchange() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setConsolidated(true);
+
+        List<String> lines = run(props, login("{\"user\":\"fcbvT034\",\"pass\":\"Fcbv@2025\"}"), ECHO);
+
+        assertEquals(1, lines.size(), lines.toString());
+        String line = lines.get(0);
+        assertTrue(line.contains("][user=fcbvB505] -> POST /login Headers: {"), line);
+        assertTrue(line.contains("Authorization=[****]"), line);
+        assertTrue(line.contains("BODY: {\"user\":\"fcbvT034\",\"pass\":\"****\"} <- 200 "), line);
+        assertTrue(line.endsWith("BODY: {\"user\":\"fcbvT034\",\"pass\":\"****\"}"), line);
+    }
+
+    @Test
+    void multiChunkResponseIsLoggedOnceWithItsWholeBody() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+
+        List<String> lines = run(props, login("{}"), chunked(Flux.empty()));
+
+        List<String> responses = lines.stream().filter(line -> line.contains(" <- ")).toList();
+        assertEquals(1, responses.size(), lines.toString());
+        assertTrue(responses.get(0).contains(" <- 200 "), responses.get(0));
+        assertTrue(responses.get(0).endsWith("BODY: {\"a\":1,\"b\":2}"), responses.get(0));
+    }
+
+    @Test
+    void responseCaptureIsReleasedWhenTheBodyFails() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+
+        List<String> lines = run(props, login("{}"), chunked(Flux.error(new IllegalStateException("upstream reset"))));
+
+        assertTrue(lines.stream().noneMatch(line -> line.contains(" <- ")), lines.toString());
+    }
+
+    @Test
+    void responseCaptureIsReleasedWhenTheClientGoesAway() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+
+        List<String> lines = run(props, MockServerWebExchange.from(login("{}")), chunked(Flux.never()),
+                filtered -> filtered.subscribe().dispose());
+
+        assertTrue(lines.stream().noneMatch(line -> line.contains(" <- ")), lines.toString());
+    }
+
+    @Test
+    void logsExchangesWhoseResponseBodyIsNeverWritten() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setConsolidated(true);
+        GatewayFilterChain noContent = exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.NO_CONTENT);
+            return exchange.getResponse().setComplete();
+        };
+
+        List<String> lines = run(props, login("{}"), noContent);
+
+        assertEquals(1, lines.size(), lines.toString());
+        assertTrue(lines.get(0).contains(" <- 204 "), lines.get(0));
+    }
+
+    @Test
+    void requestBodiesAnsweredBeforeBeingReadAreMarkedNotRead() throws Exception {
+        GatewayFilterChain refused = exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            return exchange.getResponse().setComplete();
+        };
+        MockServerHttpRequest request = MockServerHttpRequest.post("/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(2)
+                .body("{}");
+
+        GatewayLoggingProperties consolidated = new GatewayLoggingProperties();
+        consolidated.setConsolidated(true);
+        List<String> lines = run(consolidated, request, refused);
+        assertEquals(1, lines.size(), lines.toString());
+        assertTrue(lines.get(0).contains(" BODY: " + LoggingGlobalFilter.BODY_NOT_READ + " <- 429 "), lines.get(0));
+
+        Files.delete(logDir.resolve(consolidated.getAsync().getFileName()));
+        lines = run(new GatewayLoggingProperties(), request, refused);
+        assertTrue(lines.stream().anyMatch(line -> line.endsWith("-> BODY: " + LoggingGlobalFilter.BODY_NOT_READ)),
+                lines.toString());
+    }
+
+    @Test
+    void structuredRecordCarriesTheErrorOfAFailedExchange() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setFormat(GatewayLoggingProperties.AccessLogFormat.JSON);
+        GatewayFilterChain failing = exchange -> Mono.error(new IllegalStateException("upstream down"));
+
+        List<String> lines = run(props, login("{}"), failing);
+
+        assertEquals(1, lines.size(), lines.toString());
+        JsonNode record = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("error", record.get("outcome").asText());
+        assertEquals("java.lang.IllegalStateException: upstream down", record.get("error").asText());
+        assertEquals(500, record.get("status").asInt(), "what the error handler answers with");
+        assertEquals("/login", record.get("path").asText());
+    }
+
+    @Test
+    void structuredRecordCarriesTheStatusActuallySentOrNoneAtAll() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setFormat(GatewayLoggingProperties.AccessLogFormat.JSON);
+        ObjectMapper json = new ObjectMapper();
+
+        List<String> lines = run(props, login("{}"),
+                exchange -> Mono.error(new ResponseStatusException(HttpStatus.BAD_GATEWAY, "no upstream")));
+        assertEquals(502, json.readTree(lines.get(0)).get("status").asInt());
+
+        Files.delete(logDir.resolve(props.getAsync().getFileName()));
+        lines = run(props, MockServerWebExchange.from(login("{}")), exchange -> Mono.never(),
+                filtered -> filtered.subscribe().dispose());
+        JsonNode cancelled = json.readTree(lines.get(0));
+        assertEquals("cancel", cancelled.get("outcome").asText());
+        assertTrue(cancelled.get("status").isNull(), "nothing was sent: " + cancelled);
+    }
+
+    @Test
+    void offloadedLoggingKeepsTheLinesOfAnExchangeInOrder() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getOffload().setEnabled(true);
+
+        List<String> lines = run(props, login("{\"user\":\"fcbvT034\",\"pass\":\"Fcbv@2025\"}"), ECHO);
+
+        assertEquals(3, lines.size(), lines.toString());
+        assertTrue(lines.get(0).contains("][user=fcbvB505] -> POST /login Headers: {"), lines.get(0));
+        assertTrue(lines.get(1).endsWith("-> BODY: {\"user\":\"fcbvT034\",\"pass\":\"****\"}"), lines.get(1));
+        assertTrue(lines.get(2).contains("<- 200 "), lines.get(2));
+        assertTrue(lines.get(2).endsWith("BODY: {\"user\":\"fcbvT034\",\"pass\":\"****\"}"), lines.get(2));
+    }
+
+    @Test
+    void offloadedRecordIsOnlyWrittenOnceItsBodiesAreMasked() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.getOffload().setEnabled(true);
+        props.setFormat(GatewayLoggingProperties.AccessLogFormat.JSON);
+
+        List<String> lines = run(props, login("{\"user\":\"fcbvT034\",\"otp\":123456}"), ECHO);
+
+        assertEquals(1, lines.size(), lines.toString());
+        JsonNode record = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("{\"user\":\"fcbvT034\",\"otp\":\"****\"}", record.get("requestBody").asText());
+        assertEquals("{\"user\":\"fcbvT034\",\"otp\":\"****\"}", record.get("responseBody").asText());
+    }
+
+    @Test
+    void gzipResponseIsLoggedDecodedWhileTheClientGetsTheCompressedBytes() throws Exception {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setFormat(GatewayLoggingProperties.AccessLogFormat.JSON);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write("{\"user\":\"fcbvT034\",\"token\":\"abc\"}".getBytes(StandardCharsets.UTF_8));
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(login("{}"));
+        GatewayFilterChain gzipUpstream = ex -> {
+            ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            ex.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ex.getResponse().writeWith(Mono.just(ex.getResponse().bufferFactory().wrap(gzipped.toByteArray())));
+        };
+
+        List<String> lines = run(props, exchange, gzipUpstream);
+
+        JsonNode record = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("{\"user\":\"fcbvT034\",\"token\":\"****\"}", record.get("responseBody").asText());
+        assertEquals(gzipped.size(), record.get("responseBytes").asLong());
+        assertArrayEquals(gzipped.toByteArray(), DataBufferUtils.join(exchange.getResponse().getBody())
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    return bytes;
+                }).block());
+    }
+
+    /** Writes the response body in three chunks, followed by {@code tail}. */
+    private static GatewayFilterChain chunked(Flux<DataBuffer> tail) {
+        return exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return exchange.getResponse().writeWith(Flux.concat(
+                    Flux.just("{\"a\":", "1,", "\"b\":2}").map(LoggingGlobalFilterTests::buffer), tail));
+        };
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockServerHttpRequest login(String body) {
+        String basic = Base64.getEncoder().encodeToString("fcbvB505:secret".getBytes(StandardCharsets.UTF_8));
+        return MockServerHttpRequest.post("/login")
+                .header("Authorization", "Basic " + basic)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    private List<String> run(GatewayLoggingProperties props, MockServerHttpRequest request, GatewayFilterChain chain)
+            throws Exception {
+        return run(props, MockServerWebExchange.from(request), chain);
+    }
+
+    private List<String> run(GatewayLoggingProperties props, MockServerWebExchange exchange, GatewayFilterChain chain)
+            throws Exception {
+        return run(props, exchange, chain, filtered -> filtered.onErrorComplete().block());
+    }
+
+    private List<String> run(GatewayLoggingProperties props, MockServerWebExchange exchange, GatewayFilterChain chain,
+                             Consumer<Mono<Void>> drive) throws Exception {
+        props.getAsync().setEnabled(true);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        AccessLogWriter writer = new AccessLogWriter(props, meterRegistry, logDir.toString());
+        LogOffloadExecutor offload = new LogOffloadExecutor(props, meterRegistry);
+        props.getCapture().setLeakDetection(GatewayLoggingProperties.LeakDetection.PARANOID);
+        CaptureBufferPool capturePool = new CaptureBufferPool(props, meterRegistry);
+        LoggingGlobalFilter filter = new LoggingGlobalFilter(props, writer,
+                new LoggingPolicies(props, beans.getBeanProvider(GatewayProperties.class),
+                        beans.getBeanProvider(ConfigurationPropertiesRebinder.class)),
+                new JwtUsernameResolver(props, new ObjectMapper(), meterRegistry),
+                new LogSampler(props, new EventLoopLagMonitor(beans.getBeanProvider(ReactorResourceFactory.class),
+                        new GatewayEventLoopProperties(), meterRegistry),
+                        meterRegistry),
+                offload, capturePool);
+
+        writer.start();
+        offload.start();
+        drive.accept(filter.filter(exchange, chain));
+        offload.stop();
+        writer.stop();
+        assertEquals(List.of(), capturePool.outstanding(), "every body capture is released");
+        return Files.readAllLines(logDir.resolve(props.getAsync().getFileName()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.context.properties.ConfigurationPropertiesRebinder;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoggingPoliciesTests {
+
+    @Test
+    void routeOverridesInheritUnsetValuesFromGlobalSettings() {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        GatewayLoggingProperties.RoutePolicy headersOnly = new GatewayLoggingProperties.RoutePolicy();
+        headersOnly.setLogRequestBody(false);
+        headersOnly.setLogResponseBody(false);
+        props.getRoutes().put("rireq", headersOnly);
+        GatewayLoggingProperties.RoutePolicy health = new GatewayLoggingProperties.RoutePolicy();
+        health.setEnabled(false);
+        props.getRoutes().put("health", health);
+
+        LoggingPolicies policies = policies(props);
+
+        LoggingPolicy rireq = policies.resolve("rireq");
+        assertTrue(rireq.isEnabled());
+        assertTrue(rireq.isLogHeaders());
+        assertFalse(rireq.isLogRequestBody());
+        assertFalse(rireq.isLogResponseBody());
+        assertEquals(props.getMaxBodySize(), rireq.getMaxBodySize());
+        assertFalse(policies.resolve("health").isEnabled());
+        assertTrue(policies.resolve("unknown").isLogRequestBody());
+    }
+
+    @Test
+    void resolvesBodyFormatByMediaTypeIgnoringParameters() {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        props.setContentTypeIncludes(List.of("application/json", "multipart/form-data", "text/*"));
+
+        LoggingPolicy policy = policies(props).resolve((String) null);
+
+        assertEquals(LoggingPolicy.BodyFormat.JSON, policy.bodyFormat(MediaType.parseMediaType("application/json;charset=UTF-8")));
+        assertEquals(LoggingPolicy.BodyFormat.MULTIPART, policy.bodyFormat(MediaType.parseMediaType("multipart/form-data; boundary=abc")));
+        assertEquals(LoggingPolicy.BodyFormat.TEXT, policy.bodyFormat(MediaType.TEXT_HTML));
+        assertEquals(LoggingPolicy.BodyFormat.TEXT, policy.bodyFormat(null));
+        assertNull(policy.bodyFormat(MediaType.APPLICATION_OCTET_STREAM));
+        assertNull(policy.bodyFormat(MediaType.APPLICATION_FORM_URLENCODED));
+    }
+
+    @Test
+    void maskingEndpointUpdatesRulesOfEveryPolicyAtRuntime() {
+        GatewayLoggingProperties props = new GatewayLoggingProperties();
+        GatewayLoggingProperties.RoutePolicy login = new GatewayLoggingProperties.RoutePolicy();
+        login.setMaskedFormFields(List.of("user"));
+        props.getRoutes().put("login", login);
+        LoggingPolicies policies = policies(props);
+        MaskingRulesEndpoint endpoint = new MaskingRulesEndpoint(props, policies);
+        LoggingPolicy before = policies.resolve("login");
+
+        endpoint.update(List.of("x-api-key"), null, List.of("pin"));
+
+        assertTrue(policies.resolve("cireq").getMaskingRules().isMaskedHeader("X-Api-Key"));
+        assertFalse(policies.resolve("cireq").getMaskingRules().isMaskedHeader("Authorization"));
+        assertEquals(List.of("pin"), policies.resolve("cireq").getMaskingRules().formFieldNames());
+        assertEquals(List.of("user"), policies.resolve("login").getMaskingRules().formFieldNames());
+        assertTrue(policies.resolve("login").getMaskingRules().isMaskedHeader("x-api-key"));
+        assertTrue(before.getMaskingRules().isMaskedHeader("authorization"), "in-flight policies are immutable");
+        assertEquals(props.getMaskedJsonFields(), endpoint.rules().get("jsonFields"));
+    }
+
+    private static LoggingPolicies policies(GatewayLoggingProperties props) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        return new LoggingPolicies(props, beans.getBeanProvider(GatewayProperties.class),
+                beans.getBeanProvider(ConfigurationPropertiesRebinder.class));
+    }
+}
@@ -0,0 +1,43 @@
+package com.rezo.apigw.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaskingRulesTests {
+
+    private final MaskingRules rules = new MaskingRules(
+            List.of("authorization", "set-cookie"), List.of("pass", "mật_khẩu"), List.of("pass", "otp"));
+
+    @Test
+    void matchesHeadersIgnoringCaseAndJsonFieldsExactly() {
+        assertTrue(rules.isMaskedHeader("Authorization"));
+        assertTrue(rules.isMaskedHeader("SET-COOKIE"));
+        assertFalse(rules.isMaskedHeader("Set-Cookie2"));
+        assertFalse(rules.isMaskedHeader("set"));
+
+        assertTrue(rules.jsonFields().contains("pass"));
+        assertFalse(rules.jsonFields().contains("PASS"));
+        assertTrue(rules.jsonFields().contains("mật_khẩu"));
+        byte[] utf8 = "\"mật_khẩu\"".getBytes(StandardCharsets.UTF_8);
+        assertTrue(rules.jsonFields().contains(ByteBuffer.wrap(utf8), 1, utf8.length - 1));
+    }
+
+    @Test
+    void masksFormValuesInOnePassAndReturnsUntouchedInputAsIs() {
+        assertEquals("user=fcbvT034&PASS=****&otp=****&x=1",
+                rules.maskFormValues("user=fcbvT034&PASS=Fcbv%402025&otp=123456&x=1"));
+        String clean = "user=fcbvT034&password=secret";
+        assertSame(clean, rules.maskFormValues(clean));
+    }
+
+    @Test
+    void masksQuotedJsonStringValuesForAllFieldsWithOnePattern() {
+        assertEquals("{\"pass\":\"****\",\"mật_khẩu\":\"****\",\"n\":1}",
+                rules.maskJsonStringValues("{\"pass\" : \"a$1\\\\\",\"mật_khẩu\":\"b\",\"n\":1}"));
+    }
+}
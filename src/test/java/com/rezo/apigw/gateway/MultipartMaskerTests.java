@@ -0,0 +1,62 @@
+package com.rezo.apigw.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartMaskerTests {
+
+    private static final String BOUNDARY = "----formBoundary7MA4YWxkTrZu0gW";
+
+    private final MultipartMasker masker = new MultipartMasker();
+
+    @Test
+    void masksNamedFieldsAndSummarizesFileParts() {
+        DataBuffer body = buffer("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"user\"\r\n\r\n"
+                + "fcbvT034\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"PASS\"\r\n\r\n"
+                + "Fcbv@2025\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"avatar\"; filename=\"a.png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n"
+                + "\u0089PNG\r\n\u001a\n--x\r\n"
+                + "--" + BOUNDARY + "--\r\n");
+
+        String masked = masker.mask(body, BOUNDARY, NameTrie.of(List.of("pass"), true));
+
+        assertEquals("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"user\"\r\n\r\n"
+                + "fcbvT034\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"PASS\"\r\n\r\n"
+                + "****\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"avatar\"; filename=\"a.png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n"
+                + "[binary 11 bytes]\r\n"
+                + "--" + BOUNDARY + "--", masked);
+        assertEquals(0, body.readPosition());
+    }
+
+    @Test
+    void rendersBodyTruncatedMidPartAndRejectsForeignBoundary() {
+        DataBuffer truncated = buffer("--" + BOUNDARY + "\n"
+                + "Content-Disposition: form-data; name=\"pass\"\n\n"
+                + "secr");
+
+        assertEquals("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"pass\"\r\n\r\n****\r\n",
+                masker.mask(truncated, BOUNDARY, NameTrie.of(List.of("pass"), true)));
+        assertNull(masker.mask(buffer("user=a&pass=b"), BOUNDARY, NameTrie.of(List.of("pass"), true)));
+    }
+
+    private static DataBuffer buffer(String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,178 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import com.rezo.apigw.config.GatewayRateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private final GatewayFilterChain upstream = exchange -> {
+        upstreamCalls.incrementAndGet();
+        return Mono.empty();
+    };
+
+    @Test
+    void callerOverItsBurstIsRefusedWithoutReachingTheUpstreamUntilTokensRefill() {
+        LocalRateLimiter limiter = limiter();
+        RateLimitFilter filter = new RateLimitFilter(limiter, usernames());
+
+        MockServerWebExchange first = exchange("fcbv-api", "alice", "/cireq");
+        filter.filter(first, upstream).block();
+        filter.filter(exchange("fcbv-api", "alice", "/cireq"), upstream).block();
+        MockServerWebExchange refused = exchange("fcbv-api", "alice", "/cireq");
+        filter.filter(refused, upstream).block();
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals("1", first.getResponse().getHeaders().getFirst(RateLimitFilter.REMAINING_HEADER));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, refused.getResponse().getStatusCode());
+        HttpHeaders headers = refused.getResponse().getHeaders();
+        assertEquals("0", headers.getFirst(RateLimitFilter.REMAINING_HEADER));
+        assertEquals("1", headers.getFirst(RateLimitFilter.REPLENISH_RATE_HEADER));
+        assertEquals("2", headers.getFirst(RateLimitFilter.BURST_CAPACITY_HEADER));
+        assertEquals("1", headers.getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("", refused.getResponse().getBodyAsString().block());
+        assertEquals(1, registry.get("gateway.rate-limit.rejected").tags("route", "fcbv-api").counter().count());
+
+        nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+        MockServerWebExchange refilled = exchange("fcbv-api", "alice", "/cireq");
+        filter.filter(refilled, upstream).block();
+        assertNull(refilled.getResponse().getStatusCode());
+        assertEquals(3, upstreamCalls.get());
+    }
+
+    @Test
+    void bucketsArePerCallerAndPerRouteAndExemptRoutesAreNotLimited() {
+        RateLimitFilter filter = new RateLimitFilter(limiter(), usernames());
+
+        for (int i = 0; i < 3; i++) {
+            filter.filter(exchange("fcbv-api", "alice", "/cireq"), upstream).block();
+        }
+        MockServerWebExchange otherUser = exchange("fcbv-api", "bob", "/cireq");
+        filter.filter(otherUser, upstream).block();
+        MockServerWebExchange otherRoute = exchange("fcbv-report", "alice", "/rireq");
+        filter.filter(otherRoute, upstream).block();
+        for (int i = 0; i < 5; i++) {
+            filter.filter(exchange("health", null, "/ping"), upstream).block();
+        }
+
+        assertNull(otherUser.getResponse().getStatusCode());
+        assertEquals("4", otherRoute.getResponse().getHeaders().getFirst(RateLimitFilter.REMAINING_HEADER),
+                "route override: burst of 5");
+        assertEquals(2 + 1 + 1 + 5, upstreamCalls.get());
+    }
+
+    @Test
+    void anonymousCallersShareABucketPerClientIp() {
+        RateLimitFilter filter = new RateLimitFilter(limiter(), usernames());
+
+        Flux.range(0, 3)
+                .concatMap(i -> filter.filter(exchange("fcbv-api", null, "/cireq"), upstream))
+                .blockLast();
+        MockServerWebExchange named = exchange("fcbv-api", "alice", "/cireq");
+        filter.filter(named, upstream).block();
+
+        assertEquals(3, upstreamCalls.get());
+        assertNull(named.getResponse().getStatusCode(), "a named caller has its own bucket even from the same IP");
+    }
+
+    @Test
+    void rotatingClientSuppliedUsernamesDoesNotEscapeTheLimit() {
+        GatewayRateLimitProperties byIp = properties();
+        RateLimitFilter ipFilter = new RateLimitFilter(new LocalRateLimiter(byIp, registry, nanos::get), usernames());
+        GatewayRateLimitProperties untrusted = properties();
+        untrusted.setKeyResolver(GatewayRateLimitProperties.KeyResolver.USER_OR_IP);
+        untrusted.setTrustedProxies(List.of("10.0.0.7"));
+        RateLimitFilter userFilter = new RateLimitFilter(new LocalRateLimiter(untrusted, registry, nanos::get),
+                usernames());
+
+        for (RateLimitFilter filter : List.of(ipFilter, userFilter)) {
+            MockServerWebExchange last = null;
+            for (int i = 0; i < 3; i++) {
+                last = MockServerWebExchange.from(MockServerHttpRequest.post("/cireq")
+                        .remoteAddress(new InetSocketAddress("203.0.113.9", 40000 + i))
+                        .header("X-User", "made-up-" + i));
+                last.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+                        Route.async().id("fcbv-api").uri("http://localhost").predicate(ex -> true).build());
+                filter.filter(last, upstream).block();
+            }
+
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, last.getResponse().getStatusCode());
+        }
+        assertEquals(4, upstreamCalls.get(), "burst of 2 per filter");
+    }
+
+    @Test
+    void idleBucketsAreDropped() {
+        LocalRateLimiter limiter = limiter();
+        RateLimitFilter filter = new RateLimitFilter(limiter, usernames());
+        filter.filter(exchange("fcbv-api", "alice", "/cireq"), upstream).block();
+        filter.filter(exchange("fcbv-api", "bob", "/cireq"), upstream).block();
+        assertEquals(2, limiter.size());
+
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+
+        assertEquals(0, limiter.size());
+        assertEquals(0.0, registry.get("gateway.rate-limit.buckets").gauge().value());
+    }
+
+    /** Keyed by username: the test clients all come through the authenticating proxy at 10.0.0.7. */
+    private LocalRateLimiter limiter() {
+        GatewayRateLimitProperties props = properties();
+        props.setKeyResolver(GatewayRateLimitProperties.KeyResolver.USER_OR_IP);
+        props.setTrustedProxies(List.of("10.0.0.7"));
+        return new LocalRateLimiter(props, registry, nanos::get);
+    }
+
+    private GatewayRateLimitProperties properties() {
+        GatewayRateLimitProperties props = new GatewayRateLimitProperties();
+        props.setEnabled(true);
+        props.setReplenishRate(1);
+        props.setBurstCapacity(2);
+        props.setIdleTimeout(Duration.ofMinutes(1));
+        GatewayRateLimitProperties.RouteLimit report = new GatewayRateLimitProperties.RouteLimit();
+        report.setBurstCapacity(5);
+        props.getRoutes().put("fcbv-report", report);
+        GatewayRateLimitProperties.RouteLimit health = new GatewayRateLimitProperties.RouteLimit();
+        health.setEnabled(false);
+        props.getRoutes().put("health", health);
+        return props;
+    }
+
+    private JwtUsernameResolver usernames() {
+        return new JwtUsernameResolver(new GatewayLoggingProperties(), new ObjectMapper(), registry);
+    }
+
+    private static MockServerWebExchange exchange(String routeId, String username, String path) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.post(path)
+                .remoteAddress(new InetSocketAddress("10.0.0.7", 52000));
+        if (username != null) {
+            request.header("X-Username", username);
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+                Route.async().id(routeId).uri("http://localhost").predicate(ex -> true).build());
+        return exchange;
+    }
+}
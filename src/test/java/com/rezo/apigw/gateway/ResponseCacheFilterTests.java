@@ -0,0 +1,305 @@
+package com.rezo.apigw.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rezo.apigw.config.GatewayCacheProperties;
+import com.rezo.apigw.config.GatewayLoggingProperties;
+import com.rezo.apigw.config.GatewayRateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheFilterTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private HttpStatus upstreamStatus = HttpStatus.OK;
+
+    /** Echoes the request body it received, so replaying the body on a miss is checked too. */
+    private final GatewayFilterChain upstream = exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+            .map(buffer -> {
+                String body = buffer.toString(StandardCharsets.UTF_8);
+                DataBufferUtils.release(buffer);
+                return body;
+            })
+            .flatMap(body -> {
+                upstreamCalls.incrementAndGet();
+                exchange.getResponse().setStatusCode(upstreamStatus);
+                exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                byte[] bytes = ("{\"echo\":" + body + "}").getBytes(StandardCharsets.UTF_8);
+                return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(bytes)));
+            });
+
+    @Test
+    void identicalLookupsAreServedFromTheCacheWhateverTheirJsonFormatting() {
+        ResponseCacheFilter filter = new ResponseCacheFilter(cache());
+
+        MockServerWebExchange first = lookup("{\"CBSubjectCode\":\"123\",\"Type\":1}", "Bearer a");
+        filter.filter(first, upstream).block();
+        MockServerWebExchange second = lookup("{ \"Type\": 1,\n  \"CBSubjectCode\": \"123\" }", "Bearer a");
+        filter.filter(second, upstream).block();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals("MISS", first.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE));
+        assertEquals("HIT", second.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE));
+        assertEquals(HttpStatus.OK, second.getResponse().getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, second.getResponse().getHeaders().getContentType());
+        assertEquals("{\"echo\":{\"CBSubjectCode\":\"123\",\"Type\":1}}", second.getResponse().getBodyAsString().block());
+        assertEquals(ResponseCache.Result.HIT, second.getAttribute(ResponseCacheFilter.CACHE_RESULT_ATTR));
+        assertEquals(1, registry.get("gateway.cache.requests").tags("route", "fcbv-api", "result", "hit").counter().count());
+    }
+
+    @Test
+    void hitsCarryTheCallersOwnRateLimitQuotaNotTheStoredOne() {
+        GatewayRateLimitProperties limits = new GatewayRateLimitProperties();
+        limits.setEnabled(true);
+        limits.setReplenishRate(1);
+        limits.setBurstCapacity(10);
+        RateLimitFilter rateLimit = new RateLimitFilter(new LocalRateLimiter(limits, registry, () -> 0L),
+                new JwtUsernameResolver(new GatewayLoggingProperties(), new ObjectMapper(), registry));
+        ResponseCacheFilter filter = new ResponseCacheFilter(cache());
+
+        List<MockServerWebExchange> exchanges = List.of(lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"),
+                lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"), lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"));
+        for (MockServerWebExchange exchange : exchanges) {
+            rateLimit.filter(exchange, ex -> filter.filter(ex, upstream)).block();
+        }
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(List.of("MISS", "HIT", "HIT"), exchanges.stream()
+                .map(exchange -> exchange.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE)).toList());
+        assertEquals(List.of(List.of("9"), List.of("8"), List.of("7")), exchanges.stream()
+                .map(exchange -> exchange.getResponse().getHeaders().get(RateLimitFilter.REMAINING_HEADER)).toList());
+    }
+
+    @Test
+    void responsesAreNeverSharedBetweenCallersNorCachedWhenNotOk() {
+        ResponseCacheFilter filter = new ResponseCacheFilter(cache());
+
+        filter.filter(lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"), upstream).block();
+        filter.filter(lookup("{\"CBSubjectCode\":\"123\"}", "Bearer b"), upstream).block();
+        upstreamStatus = HttpStatus.BAD_GATEWAY;
+        filter.filter(lookup("{\"CBSubjectCode\":\"456\"}", "Bearer a"), upstream).block();
+        filter.filter(lookup("{\"CBSubjectCode\":\"456\"}", "Bearer a"), upstream).block();
+        MockServerWebExchange uncached = MockServerWebExchange.from(MockServerHttpRequest.post("/otp")
+                .contentType(MediaType.APPLICATION_JSON).body("{}"));
+        uncached.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route());
+        filter.filter(uncached, upstream).block();
+
+        assertEquals(5, upstreamCalls.get());
+        assertNull(uncached.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE), "not a cached endpoint");
+        assertEquals(4, registry.get("gateway.cache.requests").tags("result", "miss").counter().count());
+    }
+
+    @Test
+    void bodiesLongerThanTheLimitWithoutContentLengthBypassTheCacheAndReachTheUpstreamWhole() {
+        ResponseCacheFilter filter = new ResponseCacheFilter(cache());
+        String chunk = "\"" + "x".repeat(6 * 1024) + "\"";
+        String body = "[" + chunk + "," + chunk + "," + chunk + "]";
+
+        for (int i = 0; i < 2; i++) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/cireq")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Flux.just("[", chunk, ",", chunk, ",", chunk, "]")
+                            .map(part -> DefaultDataBufferFactory.sharedInstance.wrap(part.getBytes(StandardCharsets.UTF_8)))));
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route());
+            filter.filter(exchange, upstream).block();
+
+            assertEquals("BYPASS", exchange.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE));
+            assertEquals("{\"echo\":" + body + "}", exchange.getResponse().getBodyAsString().block());
+        }
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void removedEntriesReleaseTheirOffHeapBuffers() {
+        ResponseCache cache = cache();
+        String body = "{\"CBSubjectCode\":\"123\"}";
+        new ResponseCacheFilter(cache).filter(lookup(body, "Bearer a"), upstream).block();
+
+        MockServerWebExchange again = lookup(body, "Bearer a");
+        ResponseCache.Hit hit = cache.get(cache.key(cache.rule("fcbv-api", again.getRequest().getPath()),
+                again.getRequest(), body.getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(hit);
+        assertTrue(hit.entry().body().isDirect());
+        assertEquals(hit.entry().body().readableBytes(), hit.entry().body().capacity(),
+                "stored exactly, not in the capture that grew while the response streamed");
+        assertEquals(2, hit.entry().body().refCnt(), "the cache's reference plus the hit's duplicate");
+        DataBufferUtils.release(hit.body());
+
+        cache.invalidateAll();
+
+        assertEquals(0, hit.entry().body().refCnt());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void concurrentIdenticalRequestsShareOneUpstreamCall() {
+        // zero ttl: coalescing only, nothing is kept once the shared response has been handed out
+        ResponseCache cache = cache(Duration.ZERO);
+        ResponseCacheFilter filter = new ResponseCacheFilter(cache);
+        Sinks.Empty<Void> upstreamReply = Sinks.empty();
+        GatewayFilterChain slowUpstream = exchange -> upstreamReply.asMono().then(upstream.filter(exchange));
+
+        List<MockServerWebExchange> exchanges = List.of(lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"),
+                lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"), lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"));
+        List<CompletableFuture<Void>> done = exchanges.stream()
+                .map(exchange -> filter.filter(exchange, slowUpstream).toFuture())
+                .toList();
+        assertEquals(1.0, registry.get("gateway.cache.inflight").gauge().value());
+        upstreamReply.tryEmitEmpty();
+
+        assertTrue(done.stream().allMatch(CompletableFuture::isDone));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(List.of("MISS", "COALESCED", "COALESCED"), exchanges.stream()
+                .map(exchange -> exchange.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE)).toList());
+        for (MockServerWebExchange exchange : exchanges) {
+            assertEquals("{\"echo\":{\"CBSubjectCode\":\"123\"}}", exchange.getResponse().getBodyAsString().block());
+        }
+        assertEquals(2, registry.get("gateway.cache.requests").tags("result", "coalesced").counter().count());
+        assertEquals(0.0, registry.get("gateway.cache.inflight").gauge().value());
+
+        filter.filter(lookup("{\"CBSubjectCode\":\"123\"}", "Bearer a"), upstream).block();
+        assertEquals(2, upstreamCalls.get(), "zero ttl keeps nothing");
+    }
+
+    @Test
+    void followerSubscribingAfterTheFlightLandedStillGetsTheResponse() {
+        ResponseCache cache = cache(Duration.ZERO);
+        MockServerHttpRequest request = MockServerHttpRequest.post("/cireq").build();
+        ResponseCache.Rule rule = cache.rule("fcbv-api", request.getPath());
+        ResponseCache.Key key = cache.key(rule, request, new byte[0]);
+        ResponseCache.Flight flight = new ResponseCache.Flight();
+        assertNull(cache.register(key, flight));
+        ResponseCache.Flight joined = cache.register(key, new ResponseCache.Flight());
+
+        DataBuffer body = pooled(cache, "{\"owner\":\"a\"}");
+        cache.put(key, rule, 200, new HttpHeaders(), body, flight);
+        DataBufferUtils.release(body);
+        // the zero-ttl entry is gone; reuse its pooled buffer for something else
+        DataBuffer other = pooled(cache, "{\"owner\":\"b\"}");
+
+        ResponseCache.Hit late = cache.follow(joined).block();
+        assertNotNull(late);
+        assertEquals("{\"owner\":\"a\"}", late.body().toString(StandardCharsets.UTF_8));
+        assertEquals("{\"owner\":\"b\"}", other.toString(StandardCharsets.UTF_8));
+        DataBufferUtils.release(late.body());
+        DataBufferUtils.release(other);
+    }
+
+    @Test
+    void followersGoUpstreamThemselvesWhenTheSharedCallFails() {
+        ResponseCacheFilter filter = new ResponseCacheFilter(cache());
+        Sinks.Empty<Void> upstreamReply = Sinks.empty();
+        AtomicInteger attempts = new AtomicInteger();
+        GatewayFilterChain failingOnce = exchange -> attempts.getAndIncrement() == 0
+                ? upstreamReply.asMono() : upstream.filter(exchange);
+
+        CompletableFuture<Void> leader = filter.filter(lookup("{}", "Bearer a"), failingOnce).toFuture();
+        MockServerWebExchange follower = lookup("{}", "Bearer a");
+        CompletableFuture<Void> followed = filter.filter(follower, failingOnce).toFuture();
+        upstreamReply.tryEmitError(new IllegalStateException("connection reset"));
+
+        assertTrue(leader.isCompletedExceptionally());
+        assertTrue(followed.isDone() && !followed.isCompletedExceptionally());
+        assertEquals(1, upstreamCalls.get());
+        assertEquals("MISS", follower.getResponse().getHeaders().getFirst(ResponseCacheFilter.X_CACHE));
+        assertEquals("{\"echo\":{}}", follower.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    void lookupsRacingAnEvictionNeverSeeAnotherResponse() throws Exception {
+        ResponseCache cache = cache(Duration.ofMinutes(1));
+        MockServerHttpRequest request = MockServerHttpRequest.post("/cireq").build();
+        ResponseCache.Rule rule = cache.rule("fcbv-api", request.getPath());
+        ResponseCache.Key key = cache.key(rule, request, new byte[0]);
+        String stored = "{\"owner\":\"a\"}";
+        String other = "{\"owner\":\"b\"}";
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                try {
+                    ResponseCache.Hit hit = cache.get(key);
+                    if (hit != null) {
+                        String seen = hit.body().toString(StandardCharsets.UTF_8);
+                        DataBufferUtils.release(hit.body());
+                        assertEquals(stored, seen);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        });
+        reader.start();
+        try {
+            for (int i = 0; i < 20_000 && failure.get() == null; i++) {
+                DataBuffer body = pooled(cache, stored);
+                cache.put(key, rule, 200, new HttpHeaders(), body, null);
+                DataBufferUtils.release(body);
+                cache.invalidateAll();
+                // likely to be handed the buffer the evicted entry has just given back
+                DataBufferUtils.release(pooled(cache, other));
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+        assertNull(failure.get());
+    }
+
+    private ResponseCache cache() {
+        return cache(null);
+    }
+
+    private ResponseCache cache(Duration ttl) {
+        GatewayCacheProperties props = new GatewayCacheProperties();
+        GatewayCacheProperties.RouteCache route = new GatewayCacheProperties.RouteCache();
+        route.setPaths(List.of("/cireq"));
+        route.setTtl(ttl);
+        props.getRoutes().put("fcbv-api", route);
+        return new ResponseCache(props, new ObjectMapper(), registry);
+    }
+
+    private static DataBuffer pooled(ResponseCache cache, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return cache.bufferFactory().allocateBuffer(bytes.length).write(bytes);
+    }
+
+    private static MockServerWebExchange lookup(String body, String authorization) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/cireq")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(bytes.length)
+                .body(body));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route());
+        return exchange;
+    }
+
+    private static Route route() {
+        return Route.async().id("fcbv-api").uri("http://localhost").predicate(ex -> true).build();
+    }
+}
@@ -0,0 +1,123 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayCompressionProperties;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionTests {
+
+    private static final String LARGE = "{\"items\":[" + "{\"name\":\"fcbvT034\",\"score\":712},".repeat(200) + "{}]}";
+    private static final String SMALL = "{\"ok\":true}";
+
+    private DisposableServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void largeJsonIsCompressedForClientsThatAcceptIt() throws Exception {
+        start();
+
+        Response gzip = get("/large", "gzip");
+        Response plain = get("/large", null);
+
+        assertEquals("gzip", gzip.contentEncoding);
+        assertTrue(gzip.body.length < LARGE.length() / 4, "compressed to " + gzip.body.length);
+        assertEquals(LARGE, new String(gunzip(gzip.body), StandardCharsets.UTF_8));
+        assertNull(plain.contentEncoding);
+        assertEquals(LARGE, new String(plain.body, StandardCharsets.UTF_8));
+        assertEquals("deflate", get("/large", "deflate").contentEncoding);
+    }
+
+    @Test
+    void smallAndUnlistedResponsesAreSentAsTheyAre() throws Exception {
+        start();
+
+        assertNull(get("/small", "gzip").contentEncoding);
+        assertNull(get("/binary", "gzip").contentEncoding);
+    }
+
+    @Test
+    void upstreamCompressedBodyPassesThroughUntouched() throws Exception {
+        start();
+        byte[] upstreamGzip = gzip(LARGE);
+
+        Response response = get("/gzipped", "gzip");
+
+        assertEquals("gzip", response.contentEncoding);
+        assertArrayEquals(upstreamGzip, response.body, "not compressed a second time");
+    }
+
+    private void start() throws IOException {
+        GatewayCompressionProperties props = new GatewayCompressionProperties();
+        props.setEnabled(true);
+        props.setMinResponseSize(DataSize.ofBytes(1024));
+        props.setLevel(9);
+        byte[] upstreamGzip = gzip(LARGE);
+        HttpServer httpServer = HttpServer.create().host("localhost").port(0).route(routes -> routes
+                .get("/large", (req, res) -> res.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .sendString(Mono.just(LARGE)))
+                .get("/small", (req, res) -> res.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .header(HttpHeaderNames.CONTENT_LENGTH, Integer.toString(SMALL.length()))
+                        .sendString(Mono.just(SMALL)))
+                .get("/binary", (req, res) -> res.header(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream")
+                        .sendByteArray(Mono.just(LARGE.getBytes(StandardCharsets.UTF_8))))
+                .get("/gzipped", (req, res) -> res.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .header(HttpHeaderNames.CONTENT_ENCODING, "gzip")
+                        .header(HttpHeaderNames.CONTENT_LENGTH, Integer.toString(upstreamGzip.length))
+                        .send(Mono.just(Unpooled.wrappedBuffer(upstreamGzip)))));
+        server = new ResponseCompression(props).apply(httpServer).bindNow();
+    }
+
+    private Response get(String path, String acceptEncoding) {
+        return HttpClient.create()
+                .headers(headers -> {
+                    if (acceptEncoding != null) {
+                        headers.set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+                    }
+                })
+                .get()
+                .uri("http://localhost:" + server.port() + path)
+                .responseSingle((response, body) -> body.asByteArray()
+                        .map(bytes -> new Response(response.responseHeaders().get(HttpHeaderNames.CONTENT_ENCODING), bytes)))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private record Response(String contentEncoding, byte[] body) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.rezo.apigw.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleLineTests {
+
+    @Test
+    void collapsesWhitespaceAndControlCharactersAndTrims() {
+        assertEquals("a b c d", SingleLine.of("  a\r\n b\t\tc\u0000\u007fd \n"));
+        assertEquals("", SingleLine.of(null));
+        assertEquals("", SingleLine.of(" \r\n\t "));
+    }
+
+    @Test
+    void returnsCleanInputWithoutCopying() {
+        String clean = "{\"Subject\": {\"CBSubjectCode\": \"003190395\"}}";
+        assertSame(clean, SingleLine.of(clean));
+    }
+
+    @Test
+    void matchesTheRegexBasedNormalization() {
+        Random random = new Random(42);
+        char[] alphabet = {'a', 'Z', ' ', ' ', '\r', '\n', '\t', '\u0001', '\u007f', 'é', '"'};
+        for (int run = 0; run < 2_000; run++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String input = new String(chars);
+            String expected = input.replaceAll("\\p{Cntrl}", " ").replaceAll(" +", " ").trim();
+            assertEquals(expected, SingleLine.of(input), () -> "input: " + input.replace("\n", "\\n"));
+        }
+        assertEquals("x".repeat(100_000) + " y", SingleLine.of("x".repeat(100_000) + "\n\ny"));
+    }
+}
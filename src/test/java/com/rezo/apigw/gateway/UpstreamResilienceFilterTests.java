@@ -0,0 +1,155 @@
+package com.rezo.apigw.gateway;
+
+import com.rezo.apigw.config.GatewayResilienceProperties;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamResilienceFilterTests {
+
+    private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+            .slidingWindowSize(4)
+            .minimumNumberOfCalls(4)
+            .failureRateThreshold(50)
+            .waitDurationInOpenState(Duration.ofSeconds(30))
+            .build());
+    private final BulkheadRegistry bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+            .maxConcurrentCalls(1)
+            .maxWaitDuration(Duration.ZERO)
+            .build());
+    private final TimeLimiterRegistry timeLimiters = TimeLimiterRegistry.of(TimeLimiterConfig.custom()
+            .timeoutDuration(Duration.ofMillis(100))
+            .build());
+    private final UpstreamResilienceFilter filter = new UpstreamResilienceFilter(properties(), circuitBreakers,
+            bulkheads, timeLimiters);
+    private final UpstreamResilienceFilter.RoutingStage routing = new UpstreamResilienceFilter.RoutingStage();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    void upstreamFailuresOpenTheEndpointCircuitAndLaterCallsFailFast() {
+        GatewayFilterChain failing = routed(exchange -> {
+            upstreamCalls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.BAD_GATEWAY);
+            return Mono.empty();
+        });
+        for (int i = 0; i < 4; i++) {
+            filter.filter(exchange("/otp"), failing).block();
+        }
+        MockServerWebExchange rejected = exchange("/otp");
+        filter.filter(rejected, failing).block();
+        MockServerWebExchange otherGroup = exchange("/cireq");
+        filter.filter(otherGroup, failing).block();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakers.circuitBreaker("fcbv-auth").getState());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getResponse().getStatusCode());
+        assertEquals("30", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("{\"ReturnCode\":\"503\",\"Message\":\"Upstream unavailable, circuit open\"}",
+                rejected.getResponse().getBodyAsString().block());
+        assertEquals(5, upstreamCalls.get(), "the open circuit kept the 5th /otp call from the upstream");
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreakers.circuitBreaker("fcbv-api").getState(),
+                "endpoints outside the group have their own breaker");
+    }
+
+    @Test
+    void fullBulkheadRejectsWithoutCallingTheUpstream() {
+        GatewayFilterChain hanging = routed(exchange -> {
+            upstreamCalls.incrementAndGet();
+            return Mono.never();
+        });
+        filter.filter(exchange("/cireq"), hanging).subscribe();
+        MockServerWebExchange second = exchange("/cireq");
+        filter.filter(second, hanging).block();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, second.getResponse().getStatusCode());
+        assertNull(second.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void slowUpstreamCallIsCancelledAndAnsweredWithGatewayTimeout() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        MockServerWebExchange exchange = exchange("/cireq");
+
+        filter.filter(exchange, routed(ex -> Mono.<Void>never().doOnCancel(() -> cancelled.set(true)))).block();
+
+        assertTrue(cancelled.get());
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, exchange.getResponse().getStatusCode());
+        assertEquals(1, circuitBreakers.circuitBreaker("fcbv-api").getMetrics().getNumberOfFailedCalls());
+        assertEquals(1, bulkheads.bulkhead("fcbv-api").getMetrics().getAvailableConcurrentCalls(), "permit returned");
+    }
+
+    @Test
+    void slowClientDownloadingTheBodyIsNeitherTimedOutNorCountedAgainstTheUpstream() {
+        MockServerWebExchange exchange = exchange("/cireq");
+        AtomicInteger permitsWhileWriting = new AtomicInteger(-1);
+        // headers arrive at once, then the body takes three times the time limit to reach the client
+        GatewayFilterChain slowClient = ex -> routed(upstream -> {
+            upstream.getResponse().setStatusCode(HttpStatus.OK);
+            return Mono.empty();
+        }).filter(ex).then(Mono.fromRunnable(() -> permitsWhileWriting.set(
+                bulkheads.bulkhead("fcbv-api").getMetrics().getAvailableConcurrentCalls())))
+                .then(Mono.delay(Duration.ofMillis(300)).then());
+
+        filter.filter(exchange, slowClient).block();
+
+        assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+        assertEquals(1, permitsWhileWriting.get(), "permit returned once the headers were in");
+        CircuitBreaker.Metrics metrics = circuitBreakers.circuitBreaker("fcbv-api").getMetrics();
+        assertEquals(1, metrics.getNumberOfSuccessfulCalls());
+        assertEquals(0, metrics.getNumberOfFailedCalls());
+        assertEquals(0, metrics.getNumberOfSlowCalls());
+    }
+
+    @Test
+    void exchangesAnsweredBeforeRoutingHandThePermitsBackWithoutAnOutcome() {
+        filter.filter(exchange("/cireq"), exchange -> Mono.error(new IllegalStateException("bad request body")))
+                .onErrorComplete()
+                .block();
+
+        assertEquals(1, bulkheads.bulkhead("fcbv-api").getMetrics().getAvailableConcurrentCalls());
+        assertEquals(0, circuitBreakers.circuitBreaker("fcbv-api").getMetrics().getNumberOfBufferedCalls());
+    }
+
+    /** The upstream call as the routing filter, behind {@link UpstreamResilienceFilter.RoutingStage}. */
+    private GatewayFilterChain routed(GatewayFilterChain upstream) {
+        return exchange -> routing.filter(exchange, upstream);
+    }
+
+    private static GatewayResilienceProperties properties() {
+        GatewayResilienceProperties.Endpoint auth = new GatewayResilienceProperties.Endpoint();
+        auth.setPaths(List.of("/login", "/otp"));
+        auth.setInstance("fcbv-auth");
+        GatewayResilienceProperties.RouteResilience route = new GatewayResilienceProperties.RouteResilience();
+        route.setEndpoints(List.of(auth));
+        GatewayResilienceProperties props = new GatewayResilienceProperties();
+        props.getRoutes().put("fcbv-api", route);
+        return props;
+    }
+
+    private static MockServerWebExchange exchange(String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post(path));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+                Route.async().id("fcbv-api").uri("http://localhost").predicate(ex -> true).build());
+        return exchange;
+    }
+}
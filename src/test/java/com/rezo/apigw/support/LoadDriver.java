@@ -0,0 +1,118 @@
+package com.rezo.apigw.support;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: fires POSTs at a fixed rate regardless of how fast responses come back, and records
+ * each latency from the request's <em>scheduled</em> start so a stalled gateway shows up in the tail instead of
+ * silently lowering the offered load (coordinated omission).
+ */
+public final class LoadDriver implements AutoCloseable {
+
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LoopResources loops = LoopResources.create("load-driver", 2, true);
+    private final ConnectionProvider connections;
+    private final HttpClient client;
+
+    public LoadDriver(String baseUrl, int maxConnections) {
+        this.connections = ConnectionProvider.builder("load-driver")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = HttpClient.create(connections).runOn(loops).baseUrl(baseUrl);
+    }
+
+    /**
+     * Sends {@code rps * duration} requests and waits (up to one minute past the last send) for them to finish.
+     *
+     * @param name        label for the report
+     * @param path        request path
+     * @param contentType request content type
+     * @param body        request body, sent unchanged on every request
+     * @param bearerToken JWT sent as {@code Authorization: Bearer}, or null
+     */
+    public LoadReport run(String name, String path, String contentType, byte[] body, String bearerToken,
+                          int rps, Duration duration) throws InterruptedException {
+        long total = Math.max(1, rps * duration.toMillis() / 1000);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        Histogram latencies = new ConcurrentHistogram(MAX_TRACKABLE_NANOS, 3);
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch((int) total);
+
+        HttpClient request = client.headers(headers -> {
+            headers.set(HttpHeaderNames.CONTENT_TYPE, contentType);
+            if (bearerToken != null) {
+                headers.set(HttpHeaderNames.AUTHORIZATION, "Bearer " + bearerToken);
+            }
+        });
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long scheduled = start + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            request.post()
+                    .uri(path)
+                    .send(ByteBufFlux.fromInbound(Mono.just(body)))
+                    .responseSingle((response, content) -> content.then(Mono.just(response.status().code())))
+                    .subscribe(
+                            status -> {
+                                latencies.recordValue(Math.min(System.nanoTime() - scheduled, MAX_TRACKABLE_NANOS));
+                                if (status >= 400) {
+                                    errors.incrementAndGet();
+                                }
+                            },
+                            error -> {
+                                errors.incrementAndGet();
+                                done.countDown();
+                            },
+                            done::countDown);
+        }
+        boolean completed = done.await(1, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        return new LoadReport(name, total, completed ? errors.get() : errors.get() + done.getCount(), elapsed, latencies);
+    }
+
+    @Override
+    public void close() {
+        connections.disposeLater().block(Duration.ofSeconds(10));
+        loops.disposeLater().block(Duration.ofSeconds(10));
+    }
+
+    /** Outcome of one {@link #run}; latencies are in nanoseconds. */
+    public record LoadReport(String name, long requests, long errors, long elapsedNanos, Histogram latencies) {
+
+        public double throughput() {
+            return (requests - errors) * 1e9 / elapsedNanos;
+        }
+
+        public double percentileMillis(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%-12s requests=%d errors=%d throughput=%.1f/s p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms",
+                    name, requests, errors, throughput(), percentileMillis(50), percentileMillis(99),
+                    percentileMillis(99.9), latencies.getMaxValue() / 1e6);
+        }
+    }
+}
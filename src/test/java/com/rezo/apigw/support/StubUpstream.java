@@ -0,0 +1,116 @@
+package com.rezo.apigw.support;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Embedded reactor-netty stand-in for the FCBV upstream (see {@code .context/api.md}), so the gateway can be
+ * exercised offline and its own overhead measured in isolation.
+ * <p>
+ * {@code /login} accepts any credentials and returns a {@code token}; the JSON endpoints require
+ * {@code Authorization: Bearer <that token>} and answer with a {@code ReturnCode} envelope padded to
+ * {@code responseSize} bytes. Every response is delayed by {@code latency}.
+ */
+public final class StubUpstream implements AutoCloseable {
+
+    /** Form-data endpoints that do not require a token. */
+    public static final List<String> FORM_PATHS = List.of("/login", "/otp", "/change_pass");
+    /** JSON endpoints protected by the login token. */
+    public static final List<String> JSON_PATHS = List.of("/rireq", "/cireq", "/prreq", "/cureq", "/ecreq");
+
+    /** Unsigned JWT handed out by {@code /login}; its {@code sub} is what the gateway should log as username. */
+    public static final String TOKEN = jwt("{\"sub\":\"stub-user\",\"exp\":4102444800}");
+    public static final String SUBJECT = "stub-user";
+
+    private final Duration latency;
+    private final int responseSize;
+    private final LoopResources loops = LoopResources.create("stub-upstream", 2, true);
+    private final DisposableServer server;
+
+    private StubUpstream(Duration latency, int responseSize) {
+        this.latency = latency;
+        this.responseSize = responseSize;
+        // own event loops: the gateway disposes the global reactor-netty resources when its context closes
+        this.server = HttpServer.create()
+                .runOn(loops)
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> {
+                    routes.post("/login", (req, res) -> respond(req, res, "{\"token\":\"" + TOKEN + "\"}"));
+                    String otp = envelope("/otp");
+                    String changePass = envelope("/change_pass");
+                    routes.post("/otp", (req, res) -> respond(req, res, otp));
+                    routes.post("/change_pass", (req, res) -> respond(req, res, changePass));
+                    for (String path : JSON_PATHS) {
+                        String body = envelope(path);
+                        routes.post(path, (req, res) -> authorized(req)
+                                ? respond(req, res, body)
+                                : res.status(HttpResponseStatus.UNAUTHORIZED)
+                                        .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                        .sendString(Mono.just("{\"ReturnCode\":\"401\",\"Message\":\"Unauthorized\"}")));
+                    }
+                })
+                .bindNow();
+    }
+
+    /** Starts a stub that answers immediately with small bodies. */
+    public static StubUpstream start() {
+        return start(Duration.ZERO, 0);
+    }
+
+    /**
+     * @param latency      delay added before every response
+     * @param responseSize minimum size of JSON endpoint responses in bytes (0 for the bare envelope)
+     */
+    public static StubUpstream start(Duration latency, int responseSize) {
+        return new StubUpstream(latency, responseSize);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        loops.disposeLater().block();
+    }
+
+    private Publisher<Void> respond(HttpServerRequest req, HttpServerResponse res, String body) {
+        // read the whole request body first, as a real upstream would, so request-side logging sees all of it
+        Mono<String> response = req.receive().aggregate().asString().defaultIfEmpty("").map(request -> body);
+        if (!latency.isZero()) {
+            response = response.delayElement(latency);
+        }
+        return res.header(HttpHeaderNames.CONTENT_TYPE, "application/json").sendString(response);
+    }
+
+    private static boolean authorized(HttpServerRequest req) {
+        return ("Bearer " + TOKEN).equals(req.requestHeaders().get(HttpHeaderNames.AUTHORIZATION));
+    }
+
+    private String envelope(String path) {
+        String head = "{\"ReturnCode\":\"000\",\"Path\":\"" + path + "\",\"Padding\":\"";
+        String tail = "\"}";
+        int padding = Math.max(0, responseSize - head.length() - tail.length());
+        return head + "x".repeat(padding) + tail;
+    }
+
+    private static String jwt(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".";
+    }
+}